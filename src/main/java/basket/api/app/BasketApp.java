@@ -7,15 +7,20 @@ import basket.api.handlers.StyleHandler;
 import basket.api.handlers.StyleHandler.ApiStyle;
 import basket.api.handlers.StyleHandlerBuilder;
 import basket.api.util.FatalError;
+import basket.api.util.Lazy;
 import basket.api.util.Util;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
-import java.nio.file.FileSystem;
-import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.HashMap;
+import java.security.CodeSource;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 import jfxtras.styles.jmetro.Style;
 import org.jetbrains.annotations.Nullable;
 
@@ -69,26 +74,86 @@ public abstract class BasketApp {
 
     private static Class<? extends BasketApp> implementingClass; // for loading from the correct module
 
-    private static JSONHandler<Object> settingsHandler;
+    // made when first used, or in the background while the app starts
+    private static volatile @Nullable Lazy<JSONHandler<?>> settingsHandler;
 
-    private static StyleHandler styleHandler;
+    private static volatile @Nullable Lazy<StyleHandler> styleHandler;
 
-    private static String appId;
+    private static volatile @Nullable StartupTimes startupTimes;
+
+    /**
+     * System property that makes {@code launch} report which classes were loaded before {@code start} is called.
+     */
+    public static final String CLASS_LOADING_REPORT_PROPERTY = "basket.classLoadingReport";
+
+    private static volatile @Nullable ClassLoadingReport classLoadingReport;
+
+    private static final int STARTUP_THREADS = 2;
+
+    /**
+     * System property to set the app id with, instead of deriving it from the install location.
+     */
+    public static final String APP_ID_PROPERTY = "basket.appId";
+
+    private static volatile String appId;
 
     public static Class<?> getImplementingClass() {
         return implementingClass;
     }
 
     public static JSONHandler<Object> getSettingsHandler() {
-        return settingsHandler;
+        Lazy<JSONHandler<?>> handler = settingsHandler;
+        //noinspection unchecked
+        return handler != null ? (JSONHandler<Object>) handler.get() : null;
+    }
+
+    /**
+     * Returns the settings handler, typed to the class returned by {@code getSettingsObjectClass}.
+     * @param settingsClass the class of the settings object
+     */
+    public static <S> JSONHandler<S> getSettingsHandler(Class<S> settingsClass) {
+        JSONHandler<Object> handler = getSettingsHandler();
+        if (handler != null && !settingsClass.isInstance(handler.getObject())) {
+            throw new ClassCastException("Settings are not of type " + settingsClass.getName());
+        }
+        //noinspection unchecked
+        return (JSONHandler<S>) handler;
     }
 
     public static StyleHandler getStyleHandler() {
-        return styleHandler;
+        Lazy<StyleHandler> handler = styleHandler;
+        return handler != null ? handler.get() : null;
+    }
+
+    /**
+     * Returns the classes loaded before {@code start} was called in the last launch,
+     * or null if the {@value #CLASS_LOADING_REPORT_PROPERTY} system property was not set.
+     */
+    public static @Nullable ClassLoadingReport getClassLoadingReport() {
+        return classLoadingReport;
+    }
+
+    /**
+     * Durations of the phases of the last launch.
+     * The handlers are loaded in the background or when first used, so they can overlap with the other phases.
+     * @param instantiate creating the instance of the implementing class
+     * @param settings copying the default settings if needed, and reading them
+     * @param style making the style handler and preloading its stylesheets and icon
+     * @param start running {@code start}
+     * @param total the whole launch, including waiting for the handlers after {@code start} returned
+     */
+    public record StartupTimes(Duration instantiate, Duration settings, Duration style,
+                               Duration start, Duration total) {}
+
+    /**
+     * Returns how long the phases of the last launch took, or null if no launch has finished yet.
+     */
+    public static @Nullable StartupTimes getStartupTimes() {
+        return startupTimes;
     }
 
     /**
-     * Returns a class to convert the settings handler to.
+     * Returns a class to read the settings into.
      * @return A {@code Class} or null
      */
     protected abstract @Nullable Class<?> getSettingsObjectClass();
@@ -100,6 +165,7 @@ public abstract class BasketApp {
 
     /**
      * Override this method if you want to change the default style sheet.
+     * Its stylesheets and icon are loaded in the background while the app starts.
      * @return the style handler to use for the app
      */
     protected StyleHandler makeStyleHandler() {
@@ -117,32 +183,13 @@ public abstract class BasketApp {
         return PathHandler.getExternalFilePath("settings.json");
     }
 
-    private static Class<?> getCallingClass() {
-        // determine current method
-        String callingClassName = null;
-        StackTraceElement[] stack = Thread.currentThread().getStackTrace();
-        for (int i = 0; i < stack.length; i++) {
-            StackTraceElement stackTraceElement = stack[i];
-
-            String className = stackTraceElement.getClassName();
-            String methodName = stackTraceElement.getMethodName();
-            // if at current method, go down two more:
-            //      one to the caller of this method, one more to the caller of the inquiring method
-            if (className.equals(BasketApp.class.getName()) && methodName.equals("getCallingClass")) {
-                callingClassName = stack[i + 2].getClassName();
-                break;
-            }
-        }
+    private static final StackWalker stackWalker = StackWalker.getInstance(StackWalker.Option.RETAIN_CLASS_REFERENCE);
 
-        if (callingClassName == null) {
-            throw new RuntimeException("Couldn't find calling class");
-        }
-
-        try {
-            return Class.forName(callingClassName);
-        } catch (ClassNotFoundException e) {
-            throw new RuntimeException(e);
-        }
+    private static Class<?> getCallingClass() {
+        // skip this method and the inquiring method, to get to the caller of the inquiring method
+        return stackWalker.walk(frames -> frames.skip(2).findFirst())
+                .map(StackWalker.StackFrame::getDeclaringClass)
+                .orElseThrow(() -> new RuntimeException("Couldn't find calling class"));
     }
 
     /**
@@ -170,6 +217,8 @@ public abstract class BasketApp {
     public static void launch(Class<? extends BasketApp> implementingClass) {
         BasketApp.implementingClass = implementingClass;
 
+        long launchStart = System.nanoTime();
+
         BasketApp app;
         try {
             app = implementingClass.getConstructor().newInstance();
@@ -177,9 +226,81 @@ public abstract class BasketApp {
             throw new FatalError("Could not instantiate "+ implementingClass.getName(), e);
         }
 
-        try {
-            Path externalPath = app.makeSettingsPath();
+        Duration instantiateTime = Duration.ofNanos(System.nanoTime() - launchStart);
+
+        // the methods of the app are called on this thread, only reading files is done in the background
+        Path settingsPath = app.makeSettingsPath();
+        Class<?> settingsClass = app.getSettingsObjectClass();
+
+        long styleStart = System.nanoTime();
+        StyleHandler appStyle = app.makeStyleHandler();
+        Duration makeStyleTime = Duration.ofNanos(System.nanoTime() - styleStart);
+
+        AtomicReference<Duration> settingsTime = new AtomicReference<>();
+        AtomicReference<Duration> preloadTime = new AtomicReference<>();
+
+        Lazy<JSONHandler<?>> appSettingsHandler = new Lazy<>(() -> timed(
+                () -> makeSettingsHandler(settingsPath, settingsClass), settingsTime));
+        Lazy<StyleHandler> appStyleHandler = new Lazy<>(() -> timed(() -> {
+            appStyle.preload();
+            return appStyle;
+        }, preloadTime));
+        settingsHandler = appSettingsHandler;
+        styleHandler = appStyleHandler;
+
+        // the style handler is only needed once the first stage is shown
+        StyleHandler.applyStyleToApplication(appStyleHandler::get);
+
+        // load the handlers on other threads, so they are usually ready when they are first used
+        ExecutorService startupExecutor = Executors.newFixedThreadPool(STARTUP_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "BasketApp startup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        CompletableFuture<?> settingsLoaded = CompletableFuture.runAsync(appSettingsHandler::get, startupExecutor);
+        CompletableFuture<?> styleLoaded = CompletableFuture.runAsync(appStyleHandler::get, startupExecutor);
+        startupExecutor.shutdown();
+
+        if (Boolean.getBoolean(CLASS_LOADING_REPORT_PROPERTY)) {
+            classLoadingReport = ClassLoadingReport.capture();
+            if (classLoadingReport != null) {
+                System.out.println(classLoadingReport);
+            }
+        }
+
+        long startStart = System.nanoTime();
 
+        app.start();
+
+        Duration startTime = Duration.ofNanos(System.nanoTime() - startStart);
+
+        // usually done by now, waiting makes errors while loading end the launch
+        awaitLoaded(settingsLoaded, appSettingsHandler);
+        awaitLoaded(styleLoaded, appStyleHandler);
+
+        Duration styleTime = makeStyleTime.plus(preloadTime.get());
+        StartupTimes times = new StartupTimes(instantiateTime, settingsTime.get(), styleTime, startTime,
+                Duration.ofNanos(System.nanoTime() - launchStart));
+        startupTimes = times;
+
+        ClassDataSharing.finishLaunch(times);
+    }
+
+    private static void awaitLoaded(CompletableFuture<?> loaded, Lazy<?> handler) {
+        loaded.exceptionally(e -> null).join();
+        // a failed load is tried again on this thread, which throws its error from launch
+        handler.get();
+    }
+
+    private static <T> T timed(Supplier<T> supplier, AtomicReference<Duration> time) {
+        long start = System.nanoTime();
+        T value = supplier.get();
+        time.set(Duration.ofNanos(System.nanoTime() - start));
+        return value;
+    }
+
+    private static @Nullable JSONHandler<?> makeSettingsHandler(Path externalPath, @Nullable Class<?> settingsClass) {
+        try {
             if (!externalPath.toFile().exists()) {
                 Path internalPath = PathHandler.getInternalDataPath("settings.json");
 
@@ -192,69 +313,67 @@ public abstract class BasketApp {
                 Files.copy(internalStream, externalPath);
             }
 
-            settingsHandler = JSONHandler.read(externalPath);
+            return JSONHandler.read(externalPath, settingsClass);
         }
         catch (IOException e) {
             System.err.println("Could not create settings handler: " + e.getMessage());
+            return null;
         }
-
-        if (settingsHandler != null) {
-            settingsHandler.convertObjectTo(app.getSettingsObjectClass());
-        }
-
-        styleHandler = app.makeStyleHandler();
-        styleHandler.applyStyleToApplication();
-
-        app.start();
     }
 
+    /**
+     * Returns the id of the running app, which is {@code .self} when not running from an installed app.
+     * The id is taken from the {@value #APP_ID_PROPERTY} system property if set,
+     * and otherwise derived once from the location of the API code.
+     */
     public static String getAppId() {
-        if (appId != null) {
-            return appId;
-        }
-
-        URL url = BasketApp.class.getResource(BasketApp.class.getSimpleName() + ".class");
-
-        if (url == null) {
-            throw new FatalError("Cannot find current class");
+        String id = appId;
+        if (id == null) {
+            synchronized (BasketApp.class) {
+                id = appId;
+                if (id == null) {
+                    id = resolveAppId();
+                    appId = id;
+                }
+            }
         }
+        return id;
+    }
 
-        var env = new HashMap<String, String>();
-        env.put("create", "true");
-
-        FileSystem jarFs;
-        try {
-            jarFs = FileSystems.newFileSystem(toURI(url), env);
-        } catch (IOException e) {
-            throw new FatalError(e);
+    private static String resolveAppId() {
+        String injectedId = System.getProperty(APP_ID_PROPERTY);
+        if (injectedId != null && !injectedId.isBlank()) {
+            return injectedId;
         }
 
-        Path currentPath = Path.of(jarFs.toString());
-
-        try {
-            jarFs.close();
-        } catch (IOException e) {
-            System.err.println(e.getMessage());
-        }
+        Path currentPath = getCodeLocation();
 
         if (!currentPath.startsWith(PathHandler.getBasketHomePath().toAbsolutePath())) {
             // not in installed directory, so running locally
             return ".self";
         }
 
-        while (!currentPath.endsWith("image")) {
+        while (currentPath != null && !currentPath.endsWith("image")) {
             currentPath = currentPath.getParent();
         }
 
-        String foundId;
-
-        if (currentPath.getParent().endsWith("Basket")) {
-            foundId = ".self";
-        } else {
-            foundId = currentPath.getParent().getFileName().toString();
+        if (currentPath == null || currentPath.getParent().endsWith("Basket")) {
+            return ".self";
         }
+        return currentPath.getParent().getFileName().toString();
+    }
 
-        appId = foundId;
-        return appId;
+    /**
+     * Returns the location of the API code, without opening the archive it is in.
+     */
+    private static Path getCodeLocation() {
+        CodeSource codeSource = BasketApp.class.getProtectionDomain().getCodeSource();
+        URL location = codeSource == null ? null : codeSource.getLocation();
+
+        if (location != null && location.getProtocol().equals("file")) {
+            return Path.of(toURI(location)).toAbsolutePath();
+        }
+        // classes linked into a runtime image have no file location, but the image is the java home
+        return Path.of(System.getProperty("java.home")).toAbsolutePath();
     }
 }
@@ -0,0 +1,178 @@
+package basket.api.app;
+
+import basket.api.app.BasketApp.StartupTimes;
+import basket.api.handlers.JSONCodec;
+import basket.api.handlers.JSONHandler;
+import basket.api.handlers.PathHandler;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.stream.Stream;
+import javafx.application.Platform;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Class data sharing archives for apps, which make startup faster by loading classes from a prepared archive.
+ * <p>
+ * An archive is made by a training run: the app is started with the options from {@link #getJVMOptions(String)}
+ * while there is no usable archive, and exits as soon as {@code start} returns,
+ * after which the JVM writes the classes it loaded into the archive in the data directory of the app.
+ * Later launches with the options from {@link #getJVMOptions(String)} use the archive.
+ * An archive is stale when a file in the app library has changed since the training run,
+ * in which case the options train again.
+ * The JVM itself ignores archives made by another version of the JVM.
+ */
+public class ClassDataSharing {
+
+    // This class should not be instantiated
+    private ClassDataSharing() {}
+
+    /**
+     * System property that makes {@code launch} exit after {@code start} returns, to finish a training run.
+     */
+    public static final String TRAINING_PROPERTY = "basket.cdsTraining";
+
+    /**
+     * System property that tells {@code launch} that the app was started with the options to use the archive.
+     */
+    public static final String ARCHIVE_PROPERTY = "basket.cdsArchive";
+
+    /**
+     * Information about the archive of an app.
+     * @param libraryFingerprint the fingerprint of the files in the app library when the archive was made
+     * @param coldStartupMillis the duration of the launch of the training run, without the archive
+     * @param warmStartupMillis the duration of the first launch with the archive, or null if there has been none
+     */
+    public record ArchiveInfo(String libraryFingerprint, long coldStartupMillis, @Nullable Long warmStartupMillis) {}
+
+    public static Path getArchivePath(String appId) {
+        return PathHandler.getAppDataPath(appId).resolve("classes.jsa");
+    }
+
+    private static Path getInfoPath(String appId) {
+        return PathHandler.getAppDataPath(appId).resolve("classes.jsa.json");
+    }
+
+    /**
+     * Returns the information about the archive of the app, or null if it has no archive.
+     */
+    public static @Nullable ArchiveInfo getArchiveInfo(String appId) {
+        Path infoPath = getInfoPath(appId);
+        if (!Files.exists(infoPath) || !Files.exists(getArchivePath(appId))) {
+            return null;
+        }
+        try {
+            return JSONHandler.read(infoPath, ArchiveInfo.class, JSONCodec.COMPACT_JSON).getObject();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Could not read archive info: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Returns whether the app has an archive that was made with the current version of its library.
+     */
+    public static boolean isArchiveUsable(String appId) {
+        ArchiveInfo info = getArchiveInfo(appId);
+        return info != null && info.libraryFingerprint().equals(getLibraryFingerprint(appId));
+    }
+
+    /**
+     * Returns the JVM options to launch the app with:
+     * options to use the archive if it is usable, and otherwise options for a training run.
+     */
+    public static List<String> getJVMOptions(String appId) {
+        String archivePath = getArchivePath(appId).toAbsolutePath().toString();
+
+        if (isArchiveUsable(appId)) {
+            return List.of("-XX:SharedArchiveFile=" + archivePath, "-D" + ARCHIVE_PROPERTY + "=true");
+        }
+        return List.of("-XX:ArchiveClassesAtExit=" + archivePath, "-D" + TRAINING_PROPERTY + "=true");
+    }
+
+    static boolean isTraining() {
+        return Boolean.getBoolean(TRAINING_PROPERTY);
+    }
+
+    /**
+     * Called at the end of a launch, records the startup time of training runs and of the first launch after one.
+     */
+    static void finishLaunch(StartupTimes startupTimes) {
+        String appId = BasketApp.getAppId();
+
+        try {
+            if (isTraining()) {
+                JSONHandler.create(getInfoPath(appId), new ArchiveInfo(getLibraryFingerprint(appId),
+                        startupTimes.total().toMillis(), null), JSONCodec.COMPACT_JSON);
+
+                // the archive is written when the JVM exits
+                Platform.runLater(() -> {
+                    Platform.exit();
+                    System.exit(0);
+                });
+                return;
+            }
+
+            if (!isUsingArchive()) {
+                return;
+            }
+            ArchiveInfo info = getArchiveInfo(appId);
+            if (info != null && info.warmStartupMillis() == null) {
+                JSONHandler.create(getInfoPath(appId), new ArchiveInfo(info.libraryFingerprint(),
+                        info.coldStartupMillis(), startupTimes.total().toMillis()), JSONCodec.COMPACT_JSON);
+            }
+        } catch (IOException e) {
+            System.err.println("Could not write archive info: " + e.getMessage());
+        }
+    }
+
+    private static boolean isUsingArchive() {
+        return Boolean.getBoolean(ARCHIVE_PROPERTY);
+    }
+
+    /**
+     * Returns a hash of the paths, sizes and last modified times of the files in the app library,
+     * which changes when any of its jars is replaced, added or removed.
+     */
+    private static String getLibraryFingerprint(String appId) {
+        Path libraryPath = PathHandler.getAppLibraryPath(appId);
+        if (!Files.isDirectory(libraryPath)) {
+            // not installed, like when running locally
+            return "";
+        }
+
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(libraryPath)) {
+            files = paths.filter(Files::isRegularFile).sorted().toList();
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Could not read app library: " + e.getMessage());
+            return "";
+        }
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform supports SHA-256
+            throw new RuntimeException(e);
+        }
+
+        for (Path file : files) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                digest.update("%s|%d|%d\n".formatted(libraryPath.relativize(file), attributes.size(),
+                        attributes.lastModifiedTime().toMillis()).getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                // removed while reading, which makes the fingerprint differ as it should
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
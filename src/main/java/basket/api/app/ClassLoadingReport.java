@@ -0,0 +1,89 @@
+package basket.api.app;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Overview of the classes loaded at some point, used to find what is loaded before an app starts.
+ * @param loadedClassCount the number of loaded classes
+ * @param stackClassCounts the number of loaded classes of each library, by package prefix
+ * @param apiClasses the names of the loaded classes of the API
+ */
+public record ClassLoadingReport(int loadedClassCount, Map<String, Integer> stackClassCounts, List<String> apiClasses) {
+
+    private static final String API_PREFIX = "basket.api.";
+
+    private static final List<String> STACK_PREFIXES = List.of(
+            "javafx.",
+            "com.fasterxml.jackson.",
+            "jfxtras.styles.jmetro.",
+            "com.pixelduke.",
+            "com.sun.jna."
+    );
+
+    /**
+     * Lists the currently loaded classes, using the class hierarchy diagnostic command of the JVM.
+     * @return the report, or null if the JVM does not support the command
+     */
+    static @Nullable ClassLoadingReport capture() {
+        String hierarchy;
+        try {
+            hierarchy = (String) ManagementFactory.getPlatformMBeanServer().invoke(
+                    new ObjectName("com.sun.management:type=DiagnosticCommand"), "vmClassHierarchy",
+                    new Object[] {null}, new String[] {String[].class.getName()});
+        } catch (JMException e) {
+            System.err.println("Could not list loaded classes: " + e.getMessage());
+            return null;
+        }
+
+        Map<String, Integer> stackClassCounts = new LinkedHashMap<>();
+        for (String prefix : STACK_PREFIXES) {
+            stackClassCounts.put(prefix, 0);
+        }
+        List<String> apiClasses = new ArrayList<>();
+        int loadedClassCount = 0;
+
+        // lines look like "|  |--java.lang.String/null", with the class loader after the slash
+        for (String line : hierarchy.split("\n")) {
+            int marker = line.lastIndexOf("--");
+            int nameStart = marker == -1 ? 0 : marker + 2;
+            int nameEnd = line.indexOf('/', nameStart);
+            if (nameEnd == -1) {
+                continue;
+            }
+            String className = line.substring(nameStart, nameEnd);
+            loadedClassCount++;
+
+            if (className.startsWith(API_PREFIX)) {
+                apiClasses.add(className);
+            }
+            for (String prefix : STACK_PREFIXES) {
+                if (className.startsWith(prefix)) {
+                    stackClassCounts.merge(prefix, 1, Integer::sum);
+                }
+            }
+        }
+
+        Collections.sort(apiClasses);
+        return new ClassLoadingReport(loadedClassCount, stackClassCounts, apiClasses);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("Loaded classes: ").append(loadedClassCount).append('\n');
+        stackClassCounts.forEach((prefix, count) ->
+                builder.append("  ").append(prefix).append("*: ").append(count).append('\n'));
+        builder.append("API classes:\n");
+        for (String apiClass : apiClasses) {
+            builder.append("  ").append(apiClass).append('\n');
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,245 @@
+package basket.api.handlers;
+
+import basket.api.handlers.FileHandler.Progress;
+import basket.api.handlers.FileHandler.ProgressListener;
+import basket.api.util.CancellationToken;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Extracts zip archives, reading the archive once and writing the entries in parallel.
+ * <p>
+ * Entries are read into buffers from a fixed pool, which are handed to writer threads and returned when written.
+ * When all buffers are in use, reading waits for the writers, so memory use stays bounded.
+ * Entries too large to buffer are written while reading.
+ */
+class ArchiveExtractor {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int BUFFER_COUNT = 64;
+    // must be less than BUFFER_COUNT, so that reading can always continue
+    private static final int MAX_BUFFERS_PER_ENTRY = 16;
+
+    private final Path destination;
+    private final int threads;
+    private final Progress progress;
+    private final @Nullable CancellationToken token;
+
+    private final BlockingQueue<byte[]> bufferPool = new ArrayBlockingQueue<>(BUFFER_COUNT);
+
+    ArchiveExtractor(Path archive, Path destination, int threads,
+                     @Nullable ProgressListener listener, @Nullable CancellationToken token) throws IOException {
+        this.destination = destination.toAbsolutePath().normalize();
+        this.threads = threads;
+        this.token = token;
+
+        // the central directory gives the totals without reading the entries
+        long bytesTotal = 0;
+        int filesTotal = 0;
+        try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (!entry.isDirectory()) {
+                    bytesTotal += Math.max(entry.getSize(), 0);
+                    filesTotal++;
+                }
+            }
+        }
+        this.progress = new Progress(listener, bytesTotal, filesTotal);
+
+        for (int i = 0; i < BUFFER_COUNT; i++) {
+            bufferPool.add(new byte[BUFFER_SIZE]);
+        }
+    }
+
+    void extract(InputStream archiveStream) throws IOException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Need at least one thread");
+        }
+
+        ExecutorService writers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "FileHandler extractor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        List<Future<?>> writes = new ArrayList<>();
+        Map<Path, FileTime> directoryTimes = new HashMap<>();
+
+        try (ZipInputStream in = new ZipInputStream(archiveStream)) {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                if (token != null) {
+                    token.throwIfCancelled();
+                }
+
+                Path target = resolveEntry(entry);
+                if (entry.isDirectory()) {
+                    Files.createDirectories(target);
+                    if (entry.getLastModifiedTime() != null) {
+                        directoryTimes.put(target, entry.getLastModifiedTime());
+                    }
+                    continue;
+                }
+
+                List<byte[]> buffers = new ArrayList<>();
+                int lastLength = readBuffers(in, buffers);
+
+                if (lastLength == BUFFER_SIZE && buffers.size() == MAX_BUFFERS_PER_ENTRY) {
+                    // the entry may not fit in the buffers, so continue while reading
+                    writeEntry(target, buffers, lastLength, in, entry.getLastModifiedTime());
+                } else {
+                    FileTime time = entry.getLastModifiedTime();
+                    int finalLastLength = lastLength;
+                    writes.add(writers.submit(() -> {
+                        writeEntry(target, buffers, finalLastLength, null, time);
+                        return null;
+                    }));
+                }
+
+                // stop reading early when a write failed
+                writes.removeIf(write -> write.isDone() && getResult(write));
+            }
+
+            for (Future<?> write : writes) {
+                getResult(write);
+            }
+
+            // set last, as writing the files changes the times of their directories
+            for (Map.Entry<Path, FileTime> directoryTime : directoryTimes.entrySet()) {
+                Files.setLastModifiedTime(directoryTime.getKey(), directoryTime.getValue());
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            writers.shutdownNow();
+        }
+    }
+
+    /**
+     * Fills buffers from the pool with the entry, up to the maximum per entry.
+     * @return the number of bytes in the last buffer
+     */
+    private int readBuffers(InputStream in, List<byte[]> buffers) throws IOException {
+        while (buffers.size() < MAX_BUFFERS_PER_ENTRY) {
+            byte[] buffer = takeBuffer();
+            int length = in.readNBytes(buffer, 0, BUFFER_SIZE);
+
+            if (length == 0 && !buffers.isEmpty()) {
+                // the entry ended exactly at the end of the previous buffer
+                bufferPool.add(buffer);
+                return BUFFER_SIZE;
+            }
+            buffers.add(buffer);
+
+            if (length < BUFFER_SIZE) {
+                return length;
+            }
+        }
+        return BUFFER_SIZE;
+    }
+
+    /**
+     * Writes the entry to a temporary file next to the target, which is then moved over the target.
+     * Writing to the target itself would change the content of every hard link to it,
+     * like the files of other trees installed through the {@link ContentStore}.
+     */
+    private void writeEntry(Path target, List<byte[]> buffers, int lastLength,
+                            @Nullable InputStream rest, @Nullable FileTime time) throws IOException {
+        long written = 0;
+        Path tempPath = null;
+        try {
+            Files.createDirectories(target.getParent());
+            // not Files.createTempFile, as it makes the file readable only by its owner
+            tempPath = target.resolveSibling(".extract." + target.getFileName() + "." + UUID.randomUUID());
+
+            try (OutputStream out = Files.newOutputStream(tempPath, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.WRITE)) {
+                for (int i = 0; i < buffers.size(); i++) {
+                    int length = i == buffers.size() - 1 ? lastLength : BUFFER_SIZE;
+                    out.write(buffers.get(i), 0, length);
+                    written += length;
+                }
+                if (rest != null) {
+                    written += rest.transferTo(out);
+                }
+            }
+            setTime(tempPath, time);
+            Files.move(tempPath, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            bufferPool.addAll(buffers);
+            if (tempPath != null) {
+                Files.deleteIfExists(tempPath);
+            }
+        }
+
+        progress.add(written, 1);
+    }
+
+    private Path resolveEntry(ZipEntry entry) throws IOException {
+        Path target = destination.resolve(entry.getName()).normalize();
+        // guard against entries like ../../file, which would be written outside the destination
+        if (!target.startsWith(destination)) {
+            throw new IOException("Archive entry is outside of the destination: " + entry.getName());
+        }
+        return target;
+    }
+
+    private static void setTime(Path target, @Nullable FileTime time) throws IOException {
+        if (time != null) {
+            Files.setLastModifiedTime(target, time);
+        }
+    }
+
+    private byte[] takeBuffer() throws InterruptedIOException {
+        try {
+            return bufferPool.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a buffer");
+        }
+    }
+
+    private static boolean getResult(Future<?> write) {
+        try {
+            write.get();
+            return true;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw new UncheckedIOException(ioException);
+            }
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UncheckedIOException(
+                    new InterruptedIOException("Interrupted while waiting for writes"));
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package basket.api.handlers;
+
+import basket.api.util.Lazy;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Store of files by the hash of their content, shared by installed app trees.
+ * <p>
+ * Every file of a tree installed through the store is a hard link to a file in the store,
+ * so identical files, like the libraries that many apps ship, are only stored once.
+ * Each installed tree keeps a reference to the files it uses,
+ * and {@link #collectGarbage()} deletes the files that are no longer referenced.
+ * <p>
+ * Installed files share their content with the store, so they should never be changed in place.
+ * <p>
+ * Changes to the store are done while holding a lock on it,
+ * which excludes other stores in this process and other processes using the same store.
+ */
+public class ContentStore {
+
+    private static final Lazy<ContentStore> defaultStore =
+            new Lazy<>(() -> new ContentStore(PathHandler.getBasketHomePath().resolve("store")));
+
+    // held by all stores, as a process can hold only one file lock on a file
+    private static final Object lock = new Object();
+
+    private final Path root;
+    private final Path blobsPath;
+    private final Path referencesPath;
+
+    /**
+     * References of one installed tree.
+     */
+    record References(String path, List<String> hashes) {}
+
+    public ContentStore(Path root) {
+        this.root = root;
+        this.blobsPath = root.resolve("blobs");
+        this.referencesPath = root.resolve("references");
+    }
+
+    /**
+     * Returns the store in the Basket home directory.
+     */
+    public static ContentStore getDefault() {
+        return defaultStore.get();
+    }
+
+    @FunctionalInterface
+    private interface StoreAction<T> {
+        T run() throws IOException;
+    }
+
+    private <T> T withLock(StoreAction<T> action) throws IOException {
+        synchronized (lock) {
+            Files.createDirectories(root);
+            try (FileChannel channel = FileChannel.open(root.resolve("lock"),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                FileLock fileLock = channel.lock();
+                try {
+                    return action.run();
+                } finally {
+                    fileLock.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces the destination with a copy of the source, made of links to files in the store.
+     * Files that are not in the store yet are added to it.
+     * If a file cannot be linked, for example because the store is on another file system, it is copied instead.
+     */
+    public void install(Path source, Path destination) throws IOException {
+        if (!Files.exists(source)) {
+            return;
+        }
+
+        withLock(() -> {
+            installLocked(source, destination);
+            return null;
+        });
+    }
+
+    private void installLocked(Path source, Path destination) throws IOException {
+        List<Path> directories = new ArrayList<>();
+        List<Path> files = new ArrayList<>();
+        FileHandler.walkTree(source, directories, files, null);
+
+        FileHandler.deletePathAndContent(destination);
+
+        for (Path dir : directories) {
+            Files.createDirectory(destination.resolve(source.relativize(dir)));
+        }
+
+        Set<String> hashes = ConcurrentHashMap.newKeySet();
+
+        FileHandler.runInParallel(files, FileHandler.DEFAULT_THREADS, null, file -> {
+            String hash = HexFormat.of().formatHex(FileHandler.hash(file));
+            Path blob = addBlob(file, hash);
+            hashes.add(hash);
+
+            Path target = destination.resolve(source.relativize(file));
+            try {
+                Files.createLink(target, blob);
+            } catch (UnsupportedOperationException | FileSystemException e) {
+                Files.copy(blob, target);
+            }
+        });
+
+        JSONHandler.create(getReferencesFile(destination),
+                new References(destination.toAbsolutePath().toString(), new ArrayList<>(hashes)),
+                JSONCodec.COMPACT_JSON);
+    }
+
+    private Path addBlob(Path file, String hash) throws IOException {
+        Path blob = getBlobPath(hash);
+        if (Files.exists(blob)) {
+            return blob;
+        }
+
+        Files.createDirectories(blob.getParent());
+        Path tempPath = Files.createTempFile(blob.getParent(), hash, ".tmp");
+        try {
+            Files.copy(file, tempPath, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tempPath, blob, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException ignored) {
+            // added by another thread in the meantime
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+        return blob;
+    }
+
+    /**
+     * Deletes a tree installed with {@link #install(Path, Path)}, and its references.
+     * The files in the store are only deleted by {@link #collectGarbage()}.
+     */
+    public void uninstall(Path destination) throws IOException {
+        withLock(() -> {
+            FileHandler.deletePathAndContent(destination);
+            Files.deleteIfExists(getReferencesFile(destination));
+            return null;
+        });
+    }
+
+    /**
+     * Returns for every file in the store the number of installed trees that use it.
+     * Trees that were deleted without uninstalling them are not counted.
+     * @return a map from hash to number of references
+     */
+    public Map<String, Integer> getReferenceCounts() throws IOException {
+        return withLock(() -> countReferences(readReferences()));
+    }
+
+    /**
+     * Deletes the files in the store that are not used by any installed tree,
+     * and the references of trees that were deleted without uninstalling them.
+     * @return the number of deleted files
+     */
+    public int collectGarbage() throws IOException {
+        return withLock(() -> {
+            Map<Path, References> references = readReferences();
+            for (Map.Entry<Path, References> entry : references.entrySet()) {
+                if (!Files.exists(Path.of(entry.getValue().path()))) {
+                    Files.delete(entry.getKey());
+                }
+            }
+
+            if (!Files.isDirectory(blobsPath)) {
+                return 0;
+            }
+            Map<String, Integer> counts = countReferences(references);
+
+            List<Path> directories = new ArrayList<>();
+            List<Path> blobs = new ArrayList<>();
+            FileHandler.walkTree(blobsPath, directories, blobs, null);
+
+            int deleted = 0;
+            for (Path blob : blobs) {
+                if (!counts.containsKey(blob.getFileName().toString())) {
+                    Files.delete(blob);
+                    deleted++;
+                }
+            }
+            return deleted;
+        });
+    }
+
+    /**
+     * Reads the references of all installed trees.
+     * @return a map from references file to its content
+     */
+    private Map<Path, References> readReferences() throws IOException {
+        Map<Path, References> references = new HashMap<>();
+        if (!Files.isDirectory(referencesPath)) {
+            return references;
+        }
+
+        try (DirectoryStream<Path> referenceFiles = Files.newDirectoryStream(referencesPath, "*.json")) {
+            for (Path referenceFile : referenceFiles) {
+                references.put(referenceFile,
+                        JSONHandler.read(referenceFile, References.class, JSONCodec.COMPACT_JSON).getObject());
+            }
+        }
+        return references;
+    }
+
+    private static Map<String, Integer> countReferences(Map<Path, References> references) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (References tree : references.values()) {
+            if (!Files.exists(Path.of(tree.path()))) {
+                continue;
+            }
+            for (String hash : tree.hashes()) {
+                counts.merge(hash, 1, Integer::sum);
+            }
+        }
+        return counts;
+    }
+
+    private Path getBlobPath(String hash) {
+        return blobsPath.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    private Path getReferencesFile(Path destination) {
+        byte[] pathHash = FileHandler.newDigest().digest(destination.toAbsolutePath().normalize().toString()
+                .getBytes(StandardCharsets.UTF_8));
+        return referencesPath.resolve(HexFormat.of().formatHex(pathHash) + ".json");
+    }
+}
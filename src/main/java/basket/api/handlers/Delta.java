@@ -0,0 +1,437 @@
+package basket.api.handlers;
+
+import basket.api.util.Util;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Binary patches between two versions of a tree.
+ * <p>
+ * Changed files are stored as instructions to copy ranges of the old file and insert new bytes,
+ * found by matching blocks of the old file with a rolling checksum, like rsync.
+ * Added files are stored whole, and unchanged files are not stored at all.
+ * The patch holds the hash of every file of the new version, and of the new version as a whole,
+ * so the rebuilt version can be checked.
+ * <p>
+ * Diffing a file holds both of its versions in memory, so only files up to a size are diffed,
+ * and the diffs made at the same time are limited by the memory they need. Everything else is streamed.
+ */
+class Delta {
+
+    // This class should not be instantiated
+    private Delta() {}
+
+    private static final int MAGIC = 0x42444C54; // "BDLT"
+    private static final int VERSION = 1;
+
+    static final int BLOCK_SIZE = 4096;
+    // larger files are stored whole, as diffing holds both versions of a file in memory
+    private static final long MAX_DIFF_SIZE = 128 * 1024 * 1024;
+
+    // bounds the memory of the diffs made at the same time, in KiB
+    private static final int DIFF_MEMORY = 256 * 1024;
+    private static final Semaphore diffMemory = new Semaphore(DIFF_MEMORY);
+
+    private static final byte DIRECTORY = 0;
+    private static final byte WHOLE = 1;
+    private static final byte DIFF = 2;
+    private static final byte DELETED = 3;
+
+    private static final byte COPY = 0;
+    private static final byte DATA = 1;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * A changed file, with its content in the patch taken from the new file, or from a file of diff instructions.
+     */
+    private record Change(byte type, Path content, long size, int opCount, byte[] hash) {}
+
+    static void create(Path oldRoot, Path newRoot, Path patch) throws IOException {
+        List<Path> newDirectories = new ArrayList<>();
+        List<Path> newFiles = new ArrayList<>();
+        FileHandler.walkTree(newRoot, newDirectories, newFiles, null);
+
+        List<Path> oldFiles = new ArrayList<>();
+        FileHandler.walkTree(oldRoot, new ArrayList<>(), oldFiles, null);
+
+        Set<String> deleted = new HashSet<>();
+        for (Path file : oldFiles) {
+            deleted.add(toKey(oldRoot, file));
+        }
+
+        Map<String, byte[]> hashes = new ConcurrentHashMap<>();
+        Map<String, Change> changes = new ConcurrentHashMap<>();
+
+        // diff instructions are kept in files until the patch is written, so they do not have to fit in memory
+        Path diffDirectory = Files.createTempDirectory(patch.toAbsolutePath().getParent(), ".delta.");
+        try {
+            FileHandler.runInParallel(newFiles, FileHandler.DEFAULT_THREADS, null, file -> {
+                String key = toKey(newRoot, file);
+                byte[] hash = FileHandler.hash(file);
+                hashes.put(key, hash);
+
+                Path oldFile = oldRoot.resolve(key);
+                boolean existed = Files.isRegularFile(oldFile);
+                long oldSize = existed ? Files.size(oldFile) : -1;
+                long newSize = Files.size(file);
+
+                if (oldSize == newSize && Arrays.equals(FileHandler.hash(oldFile), hash)) {
+                    return;
+                }
+
+                if (existed && oldSize <= MAX_DIFF_SIZE && newSize <= MAX_DIFF_SIZE) {
+                    Path instructions = Files.createTempFile(diffDirectory, "diff", null);
+                    int opCount = writeDiff(oldFile, file, oldSize + newSize, instructions);
+                    changes.put(key, new Change(DIFF, instructions, Files.size(instructions), opCount, hash));
+                } else {
+                    changes.put(key, new Change(WHOLE, file, newSize, 0, hash));
+                }
+            });
+
+            deleted.removeAll(hashes.keySet());
+
+            try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(patch)), BUFFER_SIZE))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(newDirectories.size() + changes.size() + deleted.size());
+
+                for (Path dir : newDirectories) {
+                    out.writeUTF(toKey(newRoot, dir));
+                    out.writeByte(DIRECTORY);
+                }
+                for (Map.Entry<String, Change> entry : new TreeMap<>(changes).entrySet()) {
+                    Change change = entry.getValue();
+                    out.writeUTF(entry.getKey());
+                    out.writeByte(change.type());
+                    if (change.type() == WHOLE) {
+                        out.writeLong(change.size());
+                    } else {
+                        out.writeInt(change.opCount());
+                    }
+                    try (InputStream in = Files.newInputStream(change.content())) {
+                        copyBytes(new DataInputStream(in), change.size(), out, null);
+                    }
+                    out.write(change.hash());
+                }
+                for (String key : new TreeSet<>(deleted)) {
+                    out.writeUTF(key);
+                    out.writeByte(DELETED);
+                }
+
+                out.write(treeHash(hashes));
+            }
+        } finally {
+            FileHandler.deletePathAndContent(diffDirectory);
+        }
+    }
+
+    /**
+     * Writes the instructions to rebuild {@code targetFile} from {@code sourceFile} to a file,
+     * once there is memory for both files.
+     * @param memory the number of bytes needed to hold both files
+     * @return the number of instructions
+     */
+    private static int writeDiff(Path sourceFile, Path targetFile, long memory, Path instructions) throws IOException {
+        int permits = (int) Math.max(1, Math.min(DIFF_MEMORY, memory / 1024));
+        try {
+            diffMemory.acquire(permits);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to make a diff");
+        }
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(instructions), BUFFER_SIZE))) {
+            return writeDiff(Files.readAllBytes(sourceFile), Files.readAllBytes(targetFile), out);
+        } finally {
+            diffMemory.release(permits);
+        }
+    }
+
+    /**
+     * Writes the instructions to rebuild {@code target} from {@code source}.
+     * @return the number of instructions
+     */
+    private static int writeDiff(byte[] source, byte[] target, DataOutputStream ops) throws IOException {
+        Map<Integer, List<Integer>> blocks = new HashMap<>();
+        for (int offset = 0; offset + BLOCK_SIZE <= source.length; offset += BLOCK_SIZE) {
+            blocks.computeIfAbsent(checksum(source, offset), key -> new ArrayList<>()).add(offset);
+        }
+
+        int opCount = 0;
+
+        int position = 0;
+        int literalStart = 0;
+        int a = 0;
+        int b = 0;
+        boolean fresh = true;
+
+        while (position + BLOCK_SIZE <= target.length) {
+            if (fresh) {
+                int sum = checksum(target, position);
+                a = sum & 0xFFFF;
+                b = sum >>> 16;
+                fresh = false;
+            }
+
+            int match = findBlock(blocks.get(a | (b << 16)), source, target, position);
+            if (match >= 0) {
+                // extend the match as far as the files agree
+                int length = BLOCK_SIZE;
+                while (position + length < target.length && match + length < source.length
+                        && target[position + length] == source[match + length]) {
+                    length++;
+                }
+
+                if (position > literalStart) {
+                    writeData(ops, target, literalStart, position);
+                    opCount++;
+                }
+                ops.writeByte(COPY);
+                ops.writeLong(match);
+                ops.writeInt(length);
+                opCount++;
+
+                position += length;
+                literalStart = position;
+                fresh = true;
+                continue;
+            }
+
+            if (position + BLOCK_SIZE == target.length) {
+                break;
+            }
+            // roll the checksum one byte forward
+            int removed = target[position] & 0xFF;
+            int added = target[position + BLOCK_SIZE] & 0xFF;
+            a = (a - removed + added) & 0xFFFF;
+            b = (b - BLOCK_SIZE * removed + a) & 0xFFFF;
+            position++;
+        }
+
+        if (target.length > literalStart) {
+            writeData(ops, target, literalStart, target.length);
+            opCount++;
+        }
+
+        return opCount;
+    }
+
+    private static int findBlock(List<Integer> candidates, byte[] source, byte[] target, int position) {
+        if (candidates == null) {
+            return -1;
+        }
+        for (int offset : candidates) {
+            if (Arrays.equals(source, offset, offset + BLOCK_SIZE, target, position, position + BLOCK_SIZE)) {
+                return offset;
+            }
+        }
+        return -1;
+    }
+
+    private static void writeData(DataOutputStream ops, byte[] bytes, int from, int to) throws IOException {
+        ops.writeByte(DATA);
+        ops.writeInt(to - from);
+        ops.write(bytes, from, to - from);
+    }
+
+    /**
+     * Rolling checksum of a block, with the sum of the bytes in the low and the weighted sum in the high 16 bits.
+     */
+    private static int checksum(byte[] bytes, int offset) {
+        int a = 0;
+        int b = 0;
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            int value = bytes[offset + i] & 0xFF;
+            a += value;
+            b += (BLOCK_SIZE - i) * value;
+        }
+        return (a & 0xFFFF) | ((b & 0xFFFF) << 16);
+    }
+
+    /**
+     * Builds the new version of the tree in {@code newRoot}, from {@code oldRoot} and the patch.
+     * @throws IOException if the patch is invalid or the rebuilt version does not match its hashes
+     */
+    static void apply(Path patch, Path oldRoot, Path newRoot) throws IOException {
+        Set<String> handled = new HashSet<>();
+        Map<String, byte[]> hashes = new ConcurrentHashMap<>();
+
+        Files.createDirectories(newRoot);
+
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(
+                new BufferedInputStream(Files.newInputStream(patch))))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a supported patch: " + patch);
+            }
+
+            int entryCount = in.readInt();
+            for (int i = 0; i < entryCount; i++) {
+                String key = in.readUTF();
+                byte type = in.readByte();
+                Path target = resolve(newRoot, key);
+
+                switch (type) {
+                    case DIRECTORY -> Files.createDirectories(target);
+                    case DELETED -> handled.add(key);
+                    case WHOLE, DIFF -> {
+                        handled.add(key);
+                        Files.createDirectories(target.getParent());
+
+                        MessageDigest digest = FileHandler.newDigest();
+                        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(target), BUFFER_SIZE)) {
+                            if (type == WHOLE) {
+                                copyBytes(in, in.readLong(), out, digest);
+                            } else {
+                                try (FileChannel source = FileChannel.open(resolve(oldRoot, key),
+                                        StandardOpenOption.READ)) {
+                                    applyDiff(source, in, out, digest);
+                                }
+                            }
+                        }
+
+                        byte[] expected = in.readNBytes(32);
+                        byte[] actual = digest.digest();
+                        if (!Arrays.equals(expected, actual)) {
+                            throw new IOException("Rebuilt file does not match its hash: " + key);
+                        }
+                        hashes.put(key, actual);
+                    }
+                    default -> throw new IOException("Invalid patch entry: " + key);
+                }
+            }
+
+            // the files not in the patch are unchanged
+            List<Path> oldFiles = new ArrayList<>();
+            FileHandler.walkTree(oldRoot, new ArrayList<>(), oldFiles, null);
+            oldFiles.removeIf(file -> handled.contains(toKey(oldRoot, file)));
+
+            FileHandler.runInParallel(oldFiles, FileHandler.DEFAULT_THREADS, null, file -> {
+                String key = toKey(oldRoot, file);
+                Path target = newRoot.resolve(key);
+                Files.createDirectories(target.getParent());
+                FileHandler.copyFile(file, target, FileHandler.CopyStrategy.AUTO);
+                hashes.put(key, FileHandler.hash(target));
+            });
+
+            if (!Arrays.equals(in.readNBytes(32), treeHash(hashes))) {
+                throw new IOException("Rebuilt version does not match the expected hash");
+            }
+        }
+    }
+
+    /**
+     * Rebuilds a file from the instructions in the patch, reading the copied ranges from the old file as needed.
+     */
+    private static void applyDiff(FileChannel source, DataInputStream in, OutputStream out,
+                                  MessageDigest digest) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long sourceSize = source.size();
+
+        int opCount = in.readInt();
+        for (int i = 0; i < opCount; i++) {
+            byte op = in.readByte();
+            if (op == COPY) {
+                long offset = in.readLong();
+                int length = in.readInt();
+                if (offset < 0 || length < 0 || offset + length > sourceSize) {
+                    throw new IOException("Patch does not match the installed version");
+                }
+
+                long position = offset;
+                long end = offset + length;
+                while (position < end) {
+                    buffer.clear().limit((int) Math.min(BUFFER_SIZE, end - position));
+                    int read = source.read(buffer, position);
+                    if (read == -1) {
+                        throw new IOException("Installed file ended unexpectedly");
+                    }
+                    out.write(buffer.array(), 0, read);
+                    digest.update(buffer.array(), 0, read);
+                    position += read;
+                }
+            } else if (op == DATA) {
+                copyBytes(in, in.readInt(), out, digest);
+            } else {
+                throw new IOException("Invalid patch instruction");
+            }
+        }
+    }
+
+    /**
+     * Copies exactly {@code length} bytes, adding them to the digest if there is one.
+     */
+    private static void copyBytes(DataInputStream in, long length, OutputStream out,
+                                  @Nullable MessageDigest digest) throws IOException {
+        if (length < 0) {
+            throw new IOException("Invalid length in patch");
+        }
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long remaining = length;
+        while (remaining > 0) {
+            int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (read == -1) {
+                throw new IOException("Input ended unexpectedly");
+            }
+            out.write(buffer, 0, read);
+            if (digest != null) {
+                digest.update(buffer, 0, read);
+            }
+            remaining -= read;
+        }
+    }
+
+    /**
+     * Hash of a whole tree, over the sorted paths and hashes of its files.
+     */
+    private static byte[] treeHash(Map<String, byte[]> hashes) {
+        MessageDigest digest = FileHandler.newDigest();
+        for (Map.Entry<String, byte[]> entry : new TreeMap<>(hashes).entrySet()) {
+            digest.update(entry.getKey().getBytes(StandardCharsets.UTF_8));
+            digest.update(entry.getValue());
+        }
+        return digest.digest();
+    }
+
+    private static Path resolve(Path root, String key) throws IOException {
+        Path normalizedRoot = root.toAbsolutePath().normalize();
+        Path path = normalizedRoot.resolve(key).normalize();
+        if (!path.startsWith(normalizedRoot)) {
+            throw new IOException("Patch entry is outside of the tree: " + key);
+        }
+        return path;
+    }
+
+    private static String toKey(Path root, Path path) {
+        return Util.pathToJavaString(root.relativize(path));
+    }
+}
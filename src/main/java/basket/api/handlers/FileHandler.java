@@ -1,19 +1,89 @@
 package basket.api.handlers;
 
+import basket.api.util.CancellationToken;
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.jetbrains.annotations.Nullable;
 
 public class FileHandler {
 
     // This class should not be instantiated
     private FileHandler() {}
 
+    public static final int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors();
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // files of at least this size are copied with FileChannel.transferTo by CopyStrategy.AUTO
+    public static final long TRANSFER_THRESHOLD = 1024 * 1024;
+
+    public enum CopyStrategy {
+        /** Copy with {@code Files.copy}. */
+        COPY,
+        /** Copy with {@code FileChannel.transferTo}, which lets the operating system copy without extra buffers. */
+        TRANSFER,
+        /**
+         * Make a hard link to the source instead of copying, falling back to {@code AUTO} when not possible,
+         * for example on another file system.
+         * The copy shares its content with the source, so only use this for files that are never changed in place.
+         */
+        HARDLINK,
+        /** Use {@code TRANSFER} for large files and {@code COPY} for others. */
+        AUTO;
+    }
+
+    // prefix of paths that are being deleted in the background
+    public static final String TOMBSTONE_PREFIX = ".deleting.";
+
+    // prefixes of the directories used by installStaged
+    public static final String STAGING_PREFIX = ".staging.";
+    public static final String PREVIOUS_PREFIX = ".previous.";
+
+    /**
+     * Listens to the progress of a long-running file operation.
+     * Can be called from several threads at once.
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+        void progress(long bytesDone, long bytesTotal, int filesDone, int filesTotal);
+    }
+
     public static void makeFile(File file) throws IOException { // TODO: test relative path creation
         makeFile(file.toPath());
     }
@@ -60,24 +130,658 @@ public class FileHandler {
         });
     }
 
+    /**
+     * Deletes the path and its content, deleting sibling directories at the same time.
+     * @param toDelete the file or directory to delete
+     */
+    public static void deletePathAndContentInParallel(Path toDelete) throws IOException {
+        if (!Files.exists(toDelete, LinkOption.NOFOLLOW_LINKS)) {
+            return;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(DEFAULT_THREADS);
+        try {
+            pool.invoke(new DeleteTask(toDelete));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static class DeleteTask extends RecursiveAction {
+
+        private final Path toDelete;
+
+        DeleteTask(Path toDelete) {
+            this.toDelete = toDelete;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                if (Files.isDirectory(toDelete, LinkOption.NOFOLLOW_LINKS)) {
+                    List<DeleteTask> subTasks = new ArrayList<>();
+
+                    try (DirectoryStream<Path> children = Files.newDirectoryStream(toDelete)) {
+                        for (Path child : children) {
+                            if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                                subTasks.add(new DeleteTask(child));
+                            } else {
+                                Files.delete(child);
+                            }
+                        }
+                    }
+
+                    invokeAll(subTasks);
+                }
+                Files.delete(toDelete);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Moves the path out of the way and deletes it in the background.
+     * The path is free to be used again as soon as this method returns.
+     * If the path cannot be moved, it is deleted before returning instead.
+     * @param toDelete the file or directory to delete
+     * @return a future that completes when the path has been deleted
+     */
+    public static CompletableFuture<Void> deletePathAndContentInBackground(Path toDelete) throws IOException {
+        if (!Files.exists(toDelete, LinkOption.NOFOLLOW_LINKS)) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        Path tombstone = toDelete.resolveSibling(
+                TOMBSTONE_PREFIX + toDelete.getFileName() + "." + UUID.randomUUID());
+        try {
+            Files.move(toDelete, tombstone, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            deletePathAndContentInParallel(toDelete);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return deleteInBackground(tombstone);
+    }
+
+    /**
+     * Deletes tombstones left in the directory by background deletions that did not finish,
+     * for example because the app was closed.
+     * @param directory the directory to clean up
+     * @return a future that completes when all tombstones have been deleted
+     */
+    public static CompletableFuture<Void> deleteTombstones(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        List<CompletableFuture<Void>> deletions = new ArrayList<>();
+        try (DirectoryStream<Path> tombstones = Files.newDirectoryStream(directory, TOMBSTONE_PREFIX + "*")) {
+            for (Path tombstone : tombstones) {
+                deletions.add(deleteInBackground(tombstone));
+            }
+        }
+        return CompletableFuture.allOf(deletions.toArray(new CompletableFuture<?>[0]));
+    }
+
+    private static CompletableFuture<Void> deleteInBackground(Path toDelete) {
+        return runInBackground("FileHandler deleter", () -> {
+            try {
+                deletePathAndContentInParallel(toDelete);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Could not delete " + toDelete + ": " + e.getMessage());
+                throw e;
+            }
+        });
+    }
+
+    @FunctionalInterface
+    private interface IOAction {
+        void run() throws IOException;
+    }
+
+    private static CompletableFuture<Void> runInBackground(String threadName, IOAction action) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+
+        Thread thread = new Thread(() -> {
+            try {
+                action.run();
+                future.complete(null);
+            } catch (IOException | RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        }, threadName);
+        thread.setDaemon(true);
+        thread.start();
+
+        return future;
+    }
+
+    /**
+     * Installs a copy of the source at the destination, without leaving the destination unusable while copying.
+     * The source is first copied to a staging directory next to the destination, in the background.
+     * When the copy is done, the current version at the destination is moved aside
+     * and the staging directory is moved into its place.
+     * The replaced version is kept until the next install, so it can be restored with {@link #rollback(Path)}.
+     * <p>
+     * If the copy fails or is cancelled, the destination is left as it was.
+     * @param listener listener to report the progress of the copy to, or null
+     * @param token token to cancel the copy with, or null
+     * @return a future that completes when the new version is in place
+     */
+    public static CompletableFuture<Void> installStaged(Path source, Path destination,
+                                                        @Nullable ProgressListener listener,
+                                                        @Nullable CancellationToken token) {
+        return runInBackground("FileHandler installer", () -> {
+            Path staging = getSiblingPath(destination, STAGING_PREFIX);
+            deletePathAndContentInParallel(staging);
+
+            copyPathAndContent(source, staging, DEFAULT_THREADS, listener, token);
+
+            swapIn(staging, destination);
+        });
+    }
+
+    /**
+     * Moves the current version at the destination aside, keeping it for {@link #rollback(Path)},
+     * and moves the staging directory into its place.
+     * If the staging directory cannot be moved, the current version is moved back before the exception is thrown.
+     */
+    private static void swapIn(Path staging, Path destination) throws IOException {
+        Path previous = getSiblingPath(destination, PREVIOUS_PREFIX);
+        // the version before the previous one is no longer needed
+        deletePathAndContentInBackground(previous);
+
+        boolean movedAside = false;
+        if (Files.exists(destination)) {
+            Files.move(destination, previous, StandardCopyOption.ATOMIC_MOVE);
+            movedAside = true;
+        }
+
+        try {
+            Files.move(staging, destination, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            // put the current version back, so a failed install leaves it in place
+            if (movedAside) {
+                try {
+                    Files.move(previous, destination, StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException | RuntimeException restoreException) {
+                    e.addSuppressed(restoreException);
+                }
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Writes a binary patch that turns the old version of a tree into the new version.
+     * Only the changed parts of changed files are stored, so the patch is usually much smaller than the new version.
+     */
+    public static void createDelta(Path oldVersion, Path newVersion, Path patch) throws IOException {
+        Delta.create(oldVersion, newVersion, patch);
+    }
+
+    /**
+     * Updates the installed version with a patch made by {@link #createDelta(Path, Path, Path)}.
+     * The new version is built in a staging directory and checked against the hashes in the patch
+     * before it replaces the installed version, which is kept for {@link #rollback(Path)}.
+     * @throws IOException if the patch does not apply to the installed version, which is then left as it was
+     */
+    public static void applyDelta(Path patch, Path installed) throws IOException {
+        Path staging = getSiblingPath(installed, STAGING_PREFIX);
+        deletePathAndContentInParallel(staging);
+
+        try {
+            Delta.apply(patch, installed, staging);
+        } catch (IOException | RuntimeException e) {
+            deletePathAndContentInParallel(staging);
+            throw e;
+        }
+
+        swapIn(staging, installed);
+    }
+
+    /**
+     * Restores the version that was replaced by the last {@link #installStaged} at the destination.
+     * @return whether there was a version to restore
+     */
+    public static boolean rollback(Path destination) throws IOException {
+        Path previous = getSiblingPath(destination, PREVIOUS_PREFIX);
+        if (!Files.exists(previous)) {
+            return false;
+        }
+
+        deletePathAndContentInBackground(destination);
+        Files.move(previous, destination, StandardCopyOption.ATOMIC_MOVE);
+        return true;
+    }
+
+    /**
+     * Deletes the version kept for {@link #rollback(Path)} in the background.
+     * @return a future that completes when the version has been deleted
+     */
+    public static CompletableFuture<Void> deletePreviousVersion(Path destination) throws IOException {
+        return deletePathAndContentInBackground(getSiblingPath(destination, PREVIOUS_PREFIX));
+    }
+
+    private static Path getSiblingPath(Path path, String prefix) {
+        return path.resolveSibling(prefix + path.getFileName());
+    }
+
     public static void copyPathAndContent(Path source, Path destination) throws IOException {
+        copyPathAndContent(source, destination, DEFAULT_THREADS, null, null);
+    }
+
+    /**
+     * Replaces the destination with a copy of the source.
+     * All directories are created first, after which the files are copied in parallel.
+     * @param threads the number of files to copy at the same time
+     * @param listener listener to report progress to, or null
+     * @param token token to cancel the copy with, or null
+     * @throws java.util.concurrent.CancellationException if the copy was cancelled,
+     * in which case the destination is left incomplete
+     */
+    public static void copyPathAndContent(Path source, Path destination, int threads,
+                                          @Nullable ProgressListener listener,
+                                          @Nullable CancellationToken token) throws IOException {
+        copyPathAndContent(source, destination, threads, listener, token, CopyStrategy.AUTO);
+    }
+
+    /**
+     * Same as {@link #copyPathAndContent(Path, Path, int, ProgressListener, CancellationToken)},
+     * copying the files with the given strategy.
+     */
+    public static void copyPathAndContent(Path source, Path destination, int threads,
+                                          @Nullable ProgressListener listener,
+                                          @Nullable CancellationToken token,
+                                          CopyStrategy strategy) throws IOException {
         if (!Files.exists(source)) {
             return;
         }
 
+        List<Path> directories = new ArrayList<>();
+        List<Path> files = new ArrayList<>();
+        long bytesTotal = walkTree(source, directories, files, token);
+
         deletePathAndContent(destination);
 
-        Files.walkFileTree(source, new SimpleFileVisitor<>() {
+        for (Path dir : directories) {
+            Files.createDirectory(destination.resolve(source.relativize(dir)));
+        }
+
+        Progress progress = new Progress(listener, bytesTotal, files.size());
+
+        runInParallel(files, threads, token, file -> {
+            Path target = destination.resolve(source.relativize(file));
+            copyFile(file, target, strategy);
+            progress.add(Files.size(target), 1);
+        });
+    }
+
+    /**
+     * Copies a file to a target that does not exist yet.
+     * @param strategy how to copy the file
+     */
+    public static void copyFile(Path source, Path target, CopyStrategy strategy) throws IOException {
+        switch (strategy) {
+            case COPY -> Files.copy(source, target);
+            case TRANSFER -> transferFile(source, target);
+            case HARDLINK -> {
+                try {
+                    Files.createLink(target, source);
+                } catch (UnsupportedOperationException | FileSystemException e) {
+                    copyFile(source, target, CopyStrategy.AUTO);
+                }
+            }
+            case AUTO -> {
+                if (Files.size(source) >= TRANSFER_THRESHOLD) {
+                    transferFile(source, target);
+                } else {
+                    Files.copy(source, target);
+                }
+            }
+        }
+    }
+
+    private static void transferFile(Path source, Path target) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                position += in.transferTo(position, size - position, out);
+            }
+        }
+    }
+
+    /**
+     * Extracts a zip archive into the destination, writing several entries at the same time.
+     * The archive is read only once, and existing files in the destination are overwritten.
+     * Entries keep their last modified time.
+     * @param threads the number of entries to write at the same time
+     * @param listener listener to report progress to, or null
+     * @param token token to cancel the extraction with, or null
+     * @throws IOException if an entry would be extracted outside the destination
+     * @throws java.util.concurrent.CancellationException if the extraction was cancelled,
+     * in which case the destination is left incomplete
+     */
+    public static void extractArchive(Path archive, Path destination, int threads,
+                                      @Nullable ProgressListener listener,
+                                      @Nullable CancellationToken token) throws IOException {
+        ArchiveExtractor extractor = new ArchiveExtractor(archive, destination, threads, listener, token);
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(archive), BUFFER_SIZE)) {
+            extractor.extract(in);
+        }
+    }
+
+    public static void extractArchive(Path archive, Path destination) throws IOException {
+        extractArchive(archive, destination, DEFAULT_THREADS, null, null);
+    }
+
+    /**
+     * The result of {@link #verifyManifest(Path, boolean)}, with paths relative to the verified tree.
+     * @param rehashed the number of files that had to be hashed again
+     */
+    public record VerifyReport(List<String> missing, List<String> changed, List<String> added, int rehashed) {
+
+        public boolean isIntact() {
+            return missing.isEmpty() && changed.isEmpty() && added.isEmpty();
+        }
+    }
+
+    /**
+     * Hashes all files in the tree in parallel, and writes the hashes to a manifest next to the tree,
+     * at {@code <name>.manifest.json}.
+     * @param root the root of the installed tree
+     */
+    public static void writeManifest(Path root) throws IOException {
+        Manifest.write(root);
+    }
+
+    public static VerifyReport verifyManifest(Path root) throws IOException {
+        return verifyManifest(root, false);
+    }
+
+    /**
+     * Checks the tree against the manifest written by {@link #writeManifest(Path)}.
+     * Only files whose size or last modified time changed since they were last checked are hashed again,
+     * unless a full check is asked for.
+     * @param full whether to hash every file again
+     * @return the files that are missing, changed or added
+     */
+    public static VerifyReport verifyManifest(Path root, boolean full) throws IOException {
+        return Manifest.verify(root, full);
+    }
+
+    /**
+     * The work done by {@link #sync(Path, Path, boolean)}.
+     */
+    public record SyncReport(int filesCopied, int filesDeleted, int filesUnchanged, long bytesCopied) {}
+
+    public static SyncReport sync(Path source, Path destination) throws IOException {
+        return sync(source, destination, false);
+    }
+
+    /**
+     * Makes the destination a copy of the source, touching only what changed.
+     * Files are compared by size and last modified time, and optionally by content.
+     * New and changed files are copied, and files that are not in the source are removed.
+     * Copied files keep the last modified time of the source, so they are unchanged on the next sync.
+     * @param compareContent whether to compare the content of files with the same size but another modified time,
+     *                       instead of copying them
+     * @return a report of the work done
+     */
+    public static SyncReport sync(Path source, Path destination, boolean compareContent) throws IOException {
+        if (!Files.isDirectory(source)) {
+            throw new IOException("Can only sync directories");
+        }
+
+        List<Path> sourceDirectories = new ArrayList<>();
+        List<Path> sourceFiles = new ArrayList<>();
+        walkTree(source, sourceDirectories, sourceFiles, null);
+
+        Set<Path> relativeDirectories = new HashSet<>();
+        for (Path dir : sourceDirectories) {
+            relativeDirectories.add(source.relativize(dir));
+        }
+        Set<Path> relativeFiles = new HashSet<>();
+        for (Path file : sourceFiles) {
+            relativeFiles.add(source.relativize(file));
+        }
+
+        AtomicInteger filesDeleted = new AtomicInteger();
+
+        // remove what is no longer in the source, or has changed between file and directory
+        if (Files.exists(destination)) {
+            List<Path> destinationDirectories = new ArrayList<>();
+            List<Path> destinationFiles = new ArrayList<>();
+            walkTree(destination, destinationDirectories, destinationFiles, null);
+
+            for (Path file : destinationFiles) {
+                if (!relativeFiles.contains(destination.relativize(file))) {
+                    Files.delete(file);
+                    filesDeleted.incrementAndGet();
+                }
+            }
+            for (Path dir : destinationDirectories) {
+                if (Files.exists(dir) && !relativeDirectories.contains(destination.relativize(dir))) {
+                    deletePathAndContent(dir);
+                }
+            }
+        }
+
+        for (Path dir : sourceDirectories) {
+            Files.createDirectories(destination.resolve(source.relativize(dir)));
+        }
+
+        AtomicInteger filesCopied = new AtomicInteger();
+        AtomicInteger filesUnchanged = new AtomicInteger();
+        AtomicLong bytesCopied = new AtomicLong();
+
+        runInParallel(sourceFiles, DEFAULT_THREADS, null, file -> {
+            Path target = destination.resolve(source.relativize(file));
+
+            if (Files.exists(target)) {
+                BasicFileAttributes sourceAttributes = Files.readAttributes(file, BasicFileAttributes.class);
+                BasicFileAttributes targetAttributes = Files.readAttributes(target, BasicFileAttributes.class);
+
+                if (sourceAttributes.size() == targetAttributes.size()) {
+                    // compared in milliseconds, as not every file system stores times more precisely
+                    if (sourceAttributes.lastModifiedTime().toMillis()
+                            == targetAttributes.lastModifiedTime().toMillis()) {
+                        filesUnchanged.incrementAndGet();
+                        return;
+                    }
+                    if (compareContent && Arrays.equals(hash(file), hash(target))) {
+                        Files.setLastModifiedTime(target, sourceAttributes.lastModifiedTime());
+                        filesUnchanged.incrementAndGet();
+                        return;
+                    }
+                }
+            }
+
+            Files.deleteIfExists(target);
+            copyFile(file, target, CopyStrategy.AUTO);
+            Files.setLastModifiedTime(target, Files.getLastModifiedTime(file));
+            filesCopied.incrementAndGet();
+            bytesCopied.addAndGet(Files.size(target));
+        });
+
+        return new SyncReport(filesCopied.get(), filesDeleted.get(), filesUnchanged.get(), bytesCopied.get());
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform supports SHA-256
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns the SHA-256 hash of the content of a file.
+     * The file is read into a direct buffer rather than memory-mapped,
+     * as a mapping keeps the file from being deleted or renamed on Windows until it is garbage collected.
+     */
+    static byte[] hash(Path file) throws IOException {
+        MessageDigest digest = newDigest();
+        // a heap buffer for each file, as the pools that hash files only live for one operation
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Walks the tree, adding directories in the order they should be created, and files.
+     * @return the total size of the files
+     */
+    static long walkTree(Path root, List<Path> directories, List<Path> files,
+                         @Nullable CancellationToken token) throws IOException {
+        long[] size = new long[1];
+
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
             @Override
-            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
-                Files.createDirectory(destination.resolve(source.relativize(dir)));
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if (token != null) {
+                    token.throwIfCancelled();
+                }
+                directories.add(dir);
                 return FileVisitResult.CONTINUE;
             }
             @Override
-            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                Files.copy(file, destination.resolve(source.relativize(file)));
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                files.add(file);
+                size[0] += attrs.size();
                 return FileVisitResult.CONTINUE;
             }
         });
+
+        return size[0];
+    }
+
+    @FunctionalInterface
+    interface PathTask {
+        void run(Path path) throws IOException;
+    }
+
+    /**
+     * Runs the task for every path on a pool of threads, and waits until all tasks are done.
+     * When a task fails or the token is cancelled, the remaining tasks are skipped.
+     */
+    static void runInParallel(List<Path> paths, int threads, @Nullable CancellationToken token,
+                              PathTask task) throws IOException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Need at least one thread");
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(paths.size(), 1)),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "FileHandler worker");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        AtomicBoolean failed = new AtomicBoolean();
+        List<Future<?>> futures = new ArrayList<>(paths.size());
+
+        try {
+            for (Path path : paths) {
+                futures.add(executor.submit(() -> {
+                    if (failed.get()) {
+                        return null;
+                    }
+                    if (token != null) {
+                        token.throwIfCancelled();
+                    }
+                    try {
+                        task.run(path);
+                    } catch (IOException | RuntimeException e) {
+                        failed.set(true);
+                        throw e;
+                    }
+                    return null;
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException ioException) {
+                        throw ioException;
+                    }
+                    if (e.getCause() instanceof RuntimeException runtimeException) {
+                        throw runtimeException;
+                    }
+                    throw new RuntimeException(e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for file operations");
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Counts the work done by parallel tasks, and reports it to a listener.
+     */
+    static class Progress {
+
+        private final @Nullable ProgressListener listener;
+        private final long bytesTotal;
+        private final int filesTotal;
+
+        private final AtomicLong bytesDone = new AtomicLong();
+        private final AtomicInteger filesDone = new AtomicInteger();
+
+        Progress(@Nullable ProgressListener listener, long bytesTotal, int filesTotal) {
+            this.listener = listener;
+            this.bytesTotal = bytesTotal;
+            this.filesTotal = filesTotal;
+        }
+
+        void add(long bytes, int files) {
+            long newBytesDone = bytesDone.addAndGet(bytes);
+            int newFilesDone = filesDone.addAndGet(files);
+
+            if (listener != null) {
+                listener.progress(newBytesDone, bytesTotal, newFilesDone, filesTotal);
+            }
+        }
+    }
+
+    /**
+     * Replaces the content of a file in one step, by writing to a temporary file next to it and moving that over it.
+     * Readers see either the old or the new content, never a partial write.
+     * @param path the file to write to
+     * @param bytes the new content of the file
+     */
+    public static void writeAtomically(Path path, byte[] bytes) throws IOException {
+        makeFileDirectories(path);
+
+        // not Files.createTempFile, as it makes the file readable only by its owner
+        Path tempPath = path.resolveSibling("." + path.getFileName() + "." + UUID.randomUUID());
+        try {
+            Files.write(tempPath, bytes, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            try {
+                Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
     }
 }
@@ -0,0 +1,184 @@
+package basket.api.handlers;
+
+import basket.api.util.Util;
+import com.fasterxml.jackson.databind.JsonNode;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Cache of parsed JSON documents, used by {@link JSONHandler#readCached(Path, Class)}.
+ * <p>
+ * Files are cached until their size or last modified time changes, resources are cached until evicted.
+ * The cache is bounded by the total size of the cached files, not counting documents larger than the bound,
+ * and evicts the least recently used documents first.
+ * Every read binds a new object from the cached document, so callers never share an instance.
+ */
+public class JSONCache {
+
+    // This class should not be instantiated
+    private JSONCache() {}
+
+    public static final long DEFAULT_MAX_BYTES = 4 * 1024 * 1024;
+
+    private record Key(Path path, boolean resource, JSONCodec codec) {}
+
+    /**
+     * @param size the size in bytes of the document before parsing
+     */
+    private record Entry(JsonNode tree, long size, @Nullable FileTime lastModified) {}
+
+    private static long maxBytes = DEFAULT_MAX_BYTES;
+    private static long bytes;
+
+    private static final Map<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+
+    static JsonNode readFile(Path path, JSONCodec codec) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        Key key = new Key(path, false, codec);
+
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.size() == attributes.size()
+                    && attributes.lastModifiedTime().equals(entry.lastModified())) {
+                hits.incrementAndGet();
+                return entry.tree();
+            }
+        }
+
+        misses.incrementAndGet();
+        JsonNode tree = codec.getObjectMapper().readTree(path.toFile());
+        put(key, new Entry(tree, attributes.size(), attributes.lastModifiedTime()));
+        return tree;
+    }
+
+    static JsonNode readResource(Class<?> loadingClass, Path path, JSONCodec codec) throws IOException {
+        Key key = new Key(path, true, codec);
+
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                hits.incrementAndGet();
+                return entry.tree();
+            }
+        }
+
+        misses.incrementAndGet();
+        byte[] content;
+        try (InputStream stream = loadingClass.getResourceAsStream(Util.pathToJavaString(path))) {
+            if (stream == null) {
+                throw new IOException("Could not find " + path);
+            }
+            content = stream.readAllBytes();
+        }
+        JsonNode tree = codec.getObjectMapper().readTree(content);
+        put(key, new Entry(tree, content.length, null));
+        return tree;
+    }
+
+    private static void put(Key key, Entry entry) {
+        synchronized (entries) {
+            remove(key);
+            if (entry.size() > maxBytes) {
+                return;
+            }
+            entries.put(key, entry);
+            bytes += entry.size();
+            evict();
+        }
+    }
+
+    private static void remove(Key key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            bytes -= removed.size();
+        }
+    }
+
+    // evicts the least recently used entries until the cache fits
+    private static void evict() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (bytes > maxBytes) {
+            bytes -= iterator.next().size();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Removes the document of a file from the cache.
+     * @param path the path of the file
+     */
+    public static void invalidate(Path path) {
+        synchronized (entries) {
+            entries.keySet().removeIf(key -> {
+                if (key.resource() || !key.path().equals(path)) {
+                    return false;
+                }
+                bytes -= entries.get(key).size();
+                return true;
+            });
+        }
+    }
+
+    public static void clear() {
+        synchronized (entries) {
+            entries.clear();
+            bytes = 0;
+        }
+    }
+
+    /**
+     * Sets the maximum total size in bytes of the documents in the cache, measured before parsing.
+     * Use 0 to disable caching.
+     * @param maxBytes the maximum size in bytes
+     */
+    public static void setMaxBytes(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("Max bytes cannot be negative");
+        }
+        synchronized (entries) {
+            JSONCache.maxBytes = maxBytes;
+            evict();
+        }
+    }
+
+    public static long getMaxBytes() {
+        synchronized (entries) {
+            return maxBytes;
+        }
+    }
+
+    /**
+     * Returns the total size in bytes of the documents in the cache, measured before parsing.
+     */
+    public static long getBytes() {
+        synchronized (entries) {
+            return bytes;
+        }
+    }
+
+    public static int getSize() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public static long getHits() {
+        return hits.get();
+    }
+
+    public static long getMisses() {
+        return misses.get();
+    }
+}
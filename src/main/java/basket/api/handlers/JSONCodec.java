@@ -0,0 +1,99 @@
+package basket.api.handlers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.cfg.MapperBuilder;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The formats a {@link JSONHandler} can read and write.
+ * <p>
+ * {@code JSON} is indented and meant for files that are read by hand, like settings.
+ * The other formats are smaller and faster, and meant for data files that are only read by the app.
+ */
+public enum JSONCodec {
+    JSON("json"),
+    COMPACT_JSON(null),
+    SMILE("smile"),
+    CBOR("cbor");
+
+    /**
+     * System property that makes the mappers register every Jackson module found on the module or class path.
+     * By default only the Java time module is registered, as finding modules is slow.
+     */
+    public static final String FIND_MODULES_PROPERTY = "basket.jackson.findModules";
+
+    private final @Nullable String extension;
+
+    private volatile ObjectMapper objectMapper;
+
+    private final Map<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+
+    JSONCodec(@Nullable String extension) {
+        this.extension = extension;
+    }
+
+    /**
+     * Returns the codec matching the extension of the file, or {@code JSON} if there is none.
+     * @param path the path of the file
+     */
+    public static JSONCodec forPath(Path path) {
+        String fileName = path.getFileName().toString();
+        String extension = fileName.substring(fileName.lastIndexOf('.') + 1);
+
+        for (JSONCodec codec : values()) {
+            if (extension.equalsIgnoreCase(codec.extension)) {
+                return codec;
+            }
+        }
+        return JSON;
+    }
+
+    public ObjectMapper getObjectMapper() {
+        // mappers are only made when used, as the binary formats are not needed by most apps
+        if (objectMapper == null) {
+            synchronized (this) {
+                if (objectMapper == null) {
+                    objectMapper = makeObjectMapper();
+                }
+            }
+        }
+        return objectMapper;
+    }
+
+    private ObjectMapper makeObjectMapper() {
+        return switch (this) {
+            case JSON -> JSONHandler.objectMapper;
+            case COMPACT_JSON -> addModules(JsonMapper.builder())
+                    .disable(SerializationFeature.INDENT_OUTPUT)
+                    .build();
+            case SMILE -> addModules(SmileMapper.builder())
+                    .build();
+            case CBOR -> addModules(CBORMapper.builder())
+                    .build();
+        };
+    }
+
+    static <M extends ObjectMapper, B extends MapperBuilder<M, B>> B addModules(B builder) {
+        if (Boolean.getBoolean(FIND_MODULES_PROPERTY)) {
+            return builder.findAndAddModules();
+        }
+        return builder.addModule(new JavaTimeModule());
+    }
+
+    /**
+     * Returns a reader for the class, which is created once and then reused.
+     * @param tClass the class to read, or null to read plain maps and lists
+     */
+    public ObjectReader getReader(@Nullable Class<?> tClass) {
+        return readers.computeIfAbsent(tClass != null ? tClass : Object.class, getObjectMapper()::readerFor);
+    }
+}
@@ -3,49 +3,143 @@ package basket.api.handlers;
 import basket.api.util.FatalError;
 import basket.api.util.Util;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.json.JsonMapper;
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import org.jetbrains.annotations.Nullable;
 
 import static basket.api.app.BasketApp.getImplementingClass;
+import static java.util.Objects.requireNonNull;
 
 public class JSONHandler<T> {
 
+    /**
+     * Listens to changes of the object of a handler in watch mode, caused by its file being changed.
+     * @param <T> the type of the object
+     */
+    @FunctionalInterface
+    public interface FileChangeListener<T> {
+        void changed(T oldObject, T newObject);
+    }
+
+    // a save as it is written to disk: a tree in journaled mode, as only its changes are written, and bytes otherwise
+    private record Serialized(byte @Nullable [] bytes, @Nullable JsonNode tree) {}
+
     public static final ObjectMapper objectMapper =
-            JsonMapper.builder()
-                    .findAndAddModules()
+            JSONCodec.addModules(JsonMapper.builder())
                     .enable(SerializationFeature.INDENT_OUTPUT)
                     .build();
 
+    public static final Duration DEFAULT_WRITE_BEHIND_DELAY = Duration.ofMillis(500);
+
+    public static final int DEFAULT_JOURNAL_MAX_ENTRIES = 100;
+
+    private static final String JOURNAL_BASE_FIELD = "base";
+
+    // handlers that have a save waiting to be written
+    private static final Set<JSONHandler<?>> pendingHandlers = ConcurrentHashMap.newKeySet();
+
+    private static ScheduledExecutorService writer;
+
     private final Path path;
-    private T object;
-    private Object convertedObject;
+    private final JSONCodec codec;
+    private final @Nullable Class<?> objectClass;
+    // volatile so that other threads always see the latest object, with a single read
+    private volatile T object;
+    private volatile Object convertedObject;
+
+    // held while replacing the object, so that updates are applied one at a time
+    private final Object updateLock = new Object();
+
+    private @Nullable Duration writeBehindDelay;
+    private @Nullable Serialized pendingSave;
+    private long pendingVersion;
+    // every save gets the next version, so that a save never overwrites a later one on disk
+    private final AtomicLong saveVersions = new AtomicLong();
+    private long writtenVersion;
+    private byte @Nullable [] lastWrittenBytes;
+    private @Nullable FileTime lastWrittenTime;
+    private @Nullable ScheduledFuture<?> pendingWrite;
+
+    // volatile as saves are serialized for the current mode before taking the write lock
+    private volatile boolean journaled;
+    private @Nullable JsonNode journalBase;
+    private int journalEntries;
+    private long journalSize;
+    private long snapshotSize;
+    // hash of the file the journal applies to, written at the start of the journal
+    private @Nullable String snapshotHash;
+
+    private boolean watching;
+    private final List<FileChangeListener<T>> changeListeners = new CopyOnWriteArrayList<>();
+
+    // held while writing to disk, so that the handler itself stays available to save
+    private final Object writeLock = new Object();
 
     public JSONHandler(Path path) throws IOException {
         this(path, (Class<T>) null);
     }
 
     public JSONHandler(Path path, Class<T> tClass) throws IOException {
+        this(path, tClass, JSONCodec.forPath(path));
+    }
+
+    public JSONHandler(Path path, Class<T> tClass, JSONCodec codec) throws IOException {
+        this(path, tClass, codec, false);
+    }
+
+    private JSONHandler(Path path, @Nullable Class<T> tClass, JSONCodec codec, boolean cached) throws IOException {
         this.path = path;
+        this.codec = codec;
+        this.objectClass = tClass;
+
+        // binds directly to the class, or to plain maps and lists if there is none
+        ObjectReader reader = codec.getReader(tClass);
 
         try {
-            if (path.isAbsolute()) {
-                if (tClass != null) {
-                    this.object = objectMapper.readValue(path.toFile(), tClass);
-                } else {
-                    this.object = objectMapper.readValue(path.toFile(), new TypeReference<T>() {});
-                }
+            if (path.isAbsolute() && Files.exists(getJournalPath(path))) {
+                this.object = reader.readValue(readJournaled(path, codec));
+            } else if (cached && path.isAbsolute()) {
+                this.object = reader.readValue(JSONCache.readFile(path, codec));
+            } else if (cached) {
+                this.object = reader.readValue(JSONCache.readResource(getImplementingClass(), path, codec));
+            } else if (path.isAbsolute()) {
+                this.object = reader.readValue(path.toFile());
             } else {
-                InputStream stream = getImplementingClass().getResourceAsStream(Util.pathToJavaString(path));
-                if (tClass != null) {
-                    this.object = objectMapper.readValue(stream, tClass);
-                } else {
-                    this.object = objectMapper.readValue(stream, new TypeReference<T>() {});
+                try (InputStream stream = getImplementingClass().getResourceAsStream(Util.pathToJavaString(path))) {
+                    if (stream == null) {
+                        throw new IOException("Could not find " + path);
+                    }
+                    this.object = reader.readValue(stream);
                 }
             }
         } catch (JsonProcessingException e) {
@@ -56,17 +150,25 @@ public class JSONHandler<T> {
     }
 
     public JSONHandler(Path path, T object) throws IOException {
+        this(path, object, JSONCodec.forPath(path));
+    }
+
+    public JSONHandler(Path path, T object, JSONCodec codec) throws IOException {
         if (!path.isAbsolute()) {
             throw new IOException("Can only write to absolute paths");
         }
 
         this.path = path;
+        this.codec = codec;
+        this.objectClass = object.getClass();
 
         Files.deleteIfExists(path);
+        Files.deleteIfExists(getJournalPath(path));
+        JSONCache.invalidate(path);
         FileHandler.makeFile(path);
 
         try {
-            objectMapper.writeValue(path.toFile(), object);
+            codec.getObjectMapper().writeValue(path.toFile(), object);
         } catch (JsonProcessingException e) {
             throw new FatalError(e);
         }
@@ -76,13 +178,52 @@ public class JSONHandler<T> {
     }
 
     public T getObject() {
+        T object = this.object;
         if (object == null) {
             throw new IllegalStateException("Object has been converted");
         }
         return object;
     }
 
+    /**
+     * Replaces the object with an updated copy, and saves it.
+     * The function gets a deep copy of the current object, which it can change or replace.
+     * Other threads keep seeing the previous object until the update is done, and never see a partial change.
+     * Updates are applied one at a time, so no update is lost.
+     * <p>
+     * Objects returned by {@code getObject} should not be changed directly when using this method.
+     * Combine with write-behind mode to save in the background.
+     * @param updateFunction function that returns the updated object
+     * @return the updated object
+     */
+    public T update(UnaryOperator<T> updateFunction) throws IOException {
+        T updated;
+        Serialized serialized;
+        long version;
+        synchronized (updateLock) {
+            T current = getObject();
+
+            ObjectMapper mapper = codec.getObjectMapper();
+            //noinspection unchecked
+            T copy = (T) mapper.treeToValue(mapper.valueToTree(current), current.getClass());
+
+            updated = requireNonNull(updateFunction.apply(copy));
+            this.object = updated;
+
+            // taken in the same order as the updates, so the last update is the one that ends up on disk
+            serialized = serialize(updated);
+            version = saveVersions.incrementAndGet();
+        }
+
+        write(serialized, version);
+        return updated;
+    }
+
     public <NewT> NewT getConvertedObject(Class<NewT> newTClass) {
+        // the object was read as this class directly, so no conversion was needed
+        if (convertedObject == null && newTClass.isInstance(object)) {
+            return newTClass.cast(object);
+        }
         if (convertedObject == null) {
             throw new IllegalStateException("Object has not been converted");
         }
@@ -91,31 +232,408 @@ public class JSONHandler<T> {
     }
 
     public <NewT> void convertObjectTo(Class<NewT> newTClass) {
-        NewT convertedObject = objectMapper.convertValue(this.object, newTClass);
+        synchronized (updateLock) {
+            NewT convertedObject = objectMapper.convertValue(this.object, newTClass);
 
-        this.object = null;
-        this.convertedObject = convertedObject;
+            // set before clearing the object, so the handler always has something to save
+            this.convertedObject = convertedObject;
+            this.object = null;
+        }
+    }
+
+    /**
+     * Enables or disables write-behind mode.
+     * In write-behind mode {@code save} returns immediately, and saves made shortly after each other
+     * are written to disk once, in the background.
+     * Disabling write-behind mode flushes any pending save.
+     * @param writeBehind whether to use write-behind mode
+     */
+    public void setWriteBehind(boolean writeBehind) throws IOException {
+        setWriteBehind(writeBehind ? DEFAULT_WRITE_BEHIND_DELAY : null);
+    }
+
+    /**
+     * Enables write-behind mode with the given delay, or disables it if the delay is null.
+     * @param delay how long to wait for more saves before writing to disk
+     */
+    public void setWriteBehind(@Nullable Duration delay) throws IOException {
+        if (delay == null) {
+            flush();
+        }
+        synchronized (this) {
+            this.writeBehindDelay = delay;
+        }
+    }
+
+    public synchronized boolean isWriteBehind() {
+        return writeBehindDelay != null;
     }
 
     public void save() throws IOException {
         Object toWrite = object != null ? object : convertedObject;
+        write(toWrite);
+    }
+
+    public void save(T object) throws IOException {
+        write(object);
+    }
+
+    private void write(Object toWrite) throws IOException {
+        Serialized serialized = serialize(toWrite);
+        write(serialized, saveVersions.incrementAndGet());
+    }
+
+    private Serialized serialize(Object toWrite) {
         try {
-            objectMapper.writeValue(path.toFile(), toWrite);
+            if (journaled) {
+                return new Serialized(null, codec.getObjectMapper().valueToTree(toWrite));
+            }
+            return new Serialized(codec.getObjectMapper().writeValueAsBytes(toWrite), null);
         } catch (JsonProcessingException e) {
             // re-throw as this is not expected and shouldn't be handled
             throw new RuntimeException(e);
         }
     }
 
-    public void save(T object) throws IOException {
+    private void write(Serialized serialized, long version) throws IOException {
+        synchronized (this) {
+            if (writeBehindDelay != null) {
+                if (version > pendingVersion) {
+                    pendingSave = serialized;
+                    pendingVersion = version;
+                }
+                if (pendingWrite == null) {
+                    pendingHandlers.add(this);
+                    pendingWrite = getWriter().schedule(this::writePending,
+                            writeBehindDelay.toMillis(), TimeUnit.MILLISECONDS);
+                }
+                return;
+            }
+        }
+
+        writeSerialized(serialized, version);
+    }
+
+    private void writePending() {
         try {
-            objectMapper.writeValue(path.toFile(), object);
-        } catch (JsonProcessingException e) {
-            // re-throw as this is not expected and shouldn't be handled
-            throw new RuntimeException(e);
+            flush();
+        } catch (IOException e) {
+            System.err.println("Could not write " + path + ": " + e.getMessage());
         }
     }
 
+    /**
+     * Writes a pending save to disk now, on the calling thread.
+     * Does nothing if no save is pending.
+     */
+    public void flush() throws IOException {
+        synchronized (writeLock) {
+            Serialized serialized;
+            long version;
+            synchronized (this) {
+                if (pendingWrite != null) {
+                    pendingWrite.cancel(false);
+                    pendingWrite = null;
+                }
+                serialized = pendingSave;
+                version = pendingVersion;
+                pendingSave = null;
+                pendingHandlers.remove(this);
+            }
+
+            if (serialized != null) {
+                writeSerialized(serialized, version);
+            }
+        }
+    }
+
+    private void writeSerialized(Serialized serialized, long version) throws IOException {
+        synchronized (writeLock) {
+            // a later save was written while this one waited for the lock
+            if (version < writtenVersion) {
+                return;
+            }
+            writtenVersion = version;
+
+            // the mode may have changed since the save was serialized
+            ObjectMapper mapper = codec.getObjectMapper();
+            if (journaled) {
+                appendToJournal(serialized.tree() != null ? serialized.tree() : mapper.readTree(serialized.bytes()));
+                return;
+            }
+            byte[] bytes = serialized.bytes() != null
+                    ? serialized.bytes() : mapper.writeValueAsBytes(serialized.tree());
+
+            // skip the write if the file still holds exactly these bytes
+            if (Arrays.equals(bytes, lastWrittenBytes) && Files.exists(path)
+                    && Files.getLastModifiedTime(path).equals(lastWrittenTime)) {
+                return;
+            }
+            FileHandler.writeAtomically(path, bytes);
+            JSONCache.invalidate(path);
+            // a journal left from before would be replayed again if the file returns to the state it was based on
+            Files.deleteIfExists(getJournalPath(path));
+            lastWrittenBytes = bytes;
+            lastWrittenTime = Files.getLastModifiedTime(path);
+        }
+    }
+
+    /**
+     * Enables or disables journaled mode.
+     * In journaled mode a save only appends the changes since the previous save to a journal next to the file,
+     * so the cost of a save depends on the size of the change instead of the size of the document.
+     * The journal is folded back into the file when it grows too large, and when journaled mode is disabled.
+     * @param journaled whether to use journaled mode
+     */
+    public void setJournaled(boolean journaled) throws IOException {
+        flush();
+        synchronized (writeLock) {
+            if (journaled && !this.journaled) {
+                journalBase = readJournaled(path, codec);
+                // start from a clean journal
+                compact();
+            }
+            else if (!journaled && this.journaled) {
+                compact();
+                journalBase = null;
+            }
+            this.journaled = journaled;
+        }
+    }
+
+    public boolean isJournaled() {
+        synchronized (writeLock) {
+            return journaled;
+        }
+    }
+
+    private void appendToJournal(JsonNode tree) throws IOException {
+        JsonNode patch = JSONPatch.diff(journalBase, tree);
+        if (patch.isEmpty()) {
+            return;
+        }
+
+        Path journalPath = getJournalPath(path);
+        if (!Files.exists(journalPath)) {
+            String header = JSONCodec.COMPACT_JSON.getObjectMapper().createObjectNode()
+                    .put(JOURNAL_BASE_FIELD, snapshotHash) + System.lineSeparator();
+            Files.write(journalPath, header.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE_NEW);
+        }
+
+        byte[] entry = (JSONCodec.COMPACT_JSON.getObjectMapper().writeValueAsString(patch)
+                + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+        Files.write(journalPath, entry, StandardOpenOption.APPEND);
+
+        journalBase = tree;
+        journalEntries++;
+        journalSize += entry.length;
+
+        if (journalEntries >= DEFAULT_JOURNAL_MAX_ENTRIES || journalSize >= snapshotSize) {
+            compact();
+        }
+    }
+
+    /**
+     * Folds the journal back into the file and removes it.
+     * Does nothing if the handler is not in journaled mode.
+     */
+    public void compact() throws IOException {
+        synchronized (writeLock) {
+            if (journalBase == null) {
+                return;
+            }
+            byte[] bytes = codec.getObjectMapper().writeValueAsBytes(journalBase);
+            FileHandler.writeAtomically(path, bytes);
+            JSONCache.invalidate(path);
+            // a crash before this point leaves a journal for the previous file,
+            // which is ignored when reading as its base hash no longer matches
+            Files.deleteIfExists(getJournalPath(path));
+
+            lastWrittenBytes = bytes;
+            lastWrittenTime = Files.getLastModifiedTime(path);
+            journalEntries = 0;
+            journalSize = 0;
+            snapshotSize = bytes.length;
+            snapshotHash = hashSnapshot(bytes);
+        }
+    }
+
+    private static String hashSnapshot(byte[] bytes) {
+        return HexFormat.of().formatHex(FileHandler.newDigest().digest(bytes));
+    }
+
+    private static Path getJournalPath(Path path) {
+        return path.resolveSibling(path.getFileName() + ".journal");
+    }
+
+    /**
+     * Reads the file at the path as a tree, with the changes in its journal applied.
+     * A journal that was written for another version of the file, which happens when a compaction was interrupted
+     * after writing the file, is already contained in the file and is ignored.
+     */
+    private static JsonNode readJournaled(Path path, JSONCodec codec) throws IOException {
+        byte[] bytes = Files.readAllBytes(path);
+        JsonNode tree = codec.getObjectMapper().readTree(bytes);
+
+        Path journalPath = getJournalPath(path);
+        if (!Files.exists(journalPath)) {
+            return tree;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(journalPath)) {
+            String line;
+            boolean first = true;
+            while ((line = reader.readLine()) != null) {
+                JsonNode entry;
+                try {
+                    entry = objectMapper.readTree(line);
+                } catch (JsonProcessingException e) {
+                    // an interrupted append leaves an incomplete last entry, which is dropped
+                    System.err.println("Ignoring damaged journal entry in " + journalPath);
+                    break;
+                }
+
+                if (first && entry.isObject()) {
+                    first = false;
+                    if (!entry.path(JOURNAL_BASE_FIELD).asText().equals(hashSnapshot(bytes))) {
+                        return tree;
+                    }
+                    continue;
+                }
+                first = false;
+
+                try {
+                    tree = JSONPatch.apply(tree, entry);
+                } catch (IllegalArgumentException e) {
+                    // the file is kept readable, at the cost of the rest of the journal
+                    System.err.println("Ignoring journal entries that do not apply in " + journalPath
+                            + ": " + e.getMessage());
+                    break;
+                }
+            }
+        }
+        return tree;
+    }
+
+    /**
+     * Enables or disables watch mode.
+     * In watch mode the object is reloaded when its file is changed by something else, like the Basket launcher.
+     * Changes made by this handler itself are ignored.
+     * @param watching whether to use watch mode
+     */
+    public void setWatching(boolean watching) throws IOException {
+        if (!path.isAbsolute()) {
+            throw new IOException("Can only watch absolute paths");
+        }
+
+        synchronized (writeLock) {
+            if (watching && !this.watching) {
+                JSONWatcher.register(this, path.toAbsolutePath().normalize());
+            } else if (!watching && this.watching) {
+                JSONWatcher.unregister(this, path.toAbsolutePath().normalize());
+            }
+            this.watching = watching;
+        }
+    }
+
+    public boolean isWatching() {
+        synchronized (writeLock) {
+            return watching;
+        }
+    }
+
+    /**
+     * Adds a listener that is called after the object is reloaded in watch mode.
+     * Listeners are called on a background thread, use {@code Platform.runLater} to update the UI.
+     * @param listener the listener to add
+     */
+    public void addChangeListener(FileChangeListener<T> listener) {
+        changeListeners.add(listener);
+    }
+
+    public void removeChangeListener(FileChangeListener<T> listener) {
+        changeListeners.remove(listener);
+    }
+
+    void reload() {
+        Object oldObject;
+        Object newObject;
+
+        try {
+            synchronized (writeLock) {
+                if (!Files.exists(path)) {
+                    return;
+                }
+
+                JsonNode tree;
+                if (Files.exists(getJournalPath(path))) {
+                    tree = readJournaled(path, codec);
+                } else {
+                    byte[] bytes = Files.readAllBytes(path);
+                    // the file holds what was last written or read, so nothing changed
+                    if (Arrays.equals(bytes, lastWrittenBytes)) {
+                        return;
+                    }
+                    lastWrittenBytes = bytes;
+                    lastWrittenTime = Files.getLastModifiedTime(path);
+                    tree = codec.getObjectMapper().readTree(bytes);
+                }
+
+                oldObject = object != null ? object : convertedObject;
+                // in journaled mode the journal holds the last saved state, which may differ from the object
+                JsonNode currentTree = journaled ? journalBase : codec.getObjectMapper().valueToTree(oldObject);
+                if (tree.equals(currentTree)) {
+                    return;
+                }
+
+                if (journaled) {
+                    journalBase = tree;
+                }
+
+                synchronized (updateLock) {
+                    if (convertedObject != null) {
+                        newObject = codec.getReader(convertedObject.getClass()).readValue(tree);
+                        convertedObject = newObject;
+                    } else {
+                        newObject = codec.getReader(objectClass).readValue(tree);
+                        //noinspection unchecked
+                        object = (T) newObject;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Could not reload " + path + ": " + e.getMessage());
+            return;
+        }
+
+        for (FileChangeListener<T> listener : changeListeners) {
+            //noinspection unchecked
+            listener.changed((T) oldObject, (T) newObject);
+        }
+    }
+
+    /**
+     * Writes the pending saves of all handlers in write-behind mode to disk.
+     * Call this before the application exits, so that no save is lost.
+     */
+    public static void flushAll() {
+        for (JSONHandler<?> handler : pendingHandlers) {
+            handler.writePending();
+        }
+    }
+
+    private static synchronized ScheduledExecutorService getWriter() {
+        if (writer == null) {
+            writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "JSONHandler writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            Runtime.getRuntime().addShutdownHook(new Thread(JSONHandler::flushAll, "JSONHandler flush"));
+        }
+        return writer;
+    }
+
     public static <T> JSONHandler<T> read(Path path) throws IOException {
         return new JSONHandler<>(path);
     }
@@ -124,10 +642,85 @@ public class JSONHandler<T> {
         return new JSONHandler<>(path, tClass);
     }
 
+    public static <T> JSONHandler<T> read(Path path, Class<T> tClass, JSONCodec codec) throws IOException {
+        return new JSONHandler<>(path, tClass, codec);
+    }
+
+    /**
+     * Like {@link #read(Path, Class)}, but reuses the document parsed by an earlier cached read
+     * if the file has not changed since, see {@link JSONCache}.
+     * Meant for files and resources that are read often.
+     */
+    public static <T> JSONHandler<T> readCached(Path path, Class<T> tClass) throws IOException {
+        return readCached(path, tClass, JSONCodec.forPath(path));
+    }
+
+    public static <T> JSONHandler<T> readCached(Path path, Class<T> tClass, JSONCodec codec) throws IOException {
+        return new JSONHandler<>(path, tClass, codec, true);
+    }
+
+    /**
+     * Returns a reader for the class, which is created once and then reused.
+     * @param tClass the class to read, or null to read plain maps and lists
+     */
+    public static ObjectReader getReader(@Nullable Class<?> tClass) {
+        return JSONCodec.JSON.getReader(tClass);
+    }
+
+    /**
+     * Lazily reads the elements of a file containing a top-level array, one at a time.
+     * Only the current element is kept in memory, so large files can be filtered and aggregated cheaply.
+     * The stream must be closed after use, for example with try-with-resources.
+     * @param path an absolute path to a file, or a path to a resource of the implementing app
+     * @param eClass the class of the elements
+     * @return a stream of the elements in the array
+     */
+    public static <E> Stream<E> stream(Path path, Class<E> eClass) throws IOException {
+        return stream(path, eClass, JSONCodec.forPath(path));
+    }
+
+    public static <E> Stream<E> stream(Path path, Class<E> eClass, JSONCodec codec) throws IOException {
+        MappingIterator<E> iterator;
+        ObjectReader reader = codec.getReader(eClass);
+
+        if (path.isAbsolute() && Files.exists(getJournalPath(path))) {
+            // the journal has to be replayed over the whole document
+            JsonNode tree = readJournaled(path, codec);
+            return StreamSupport.stream(tree.spliterator(), false).map(element -> {
+                try {
+                    return reader.<E>readValue(element);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } else if (path.isAbsolute()) {
+            iterator = reader.readValues(path.toFile());
+        } else {
+            InputStream stream = getImplementingClass().getResourceAsStream(Util.pathToJavaString(path));
+            if (stream == null) {
+                throw new IOException("Could not find " + path);
+            }
+            iterator = reader.readValues(stream);
+        }
+
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false)
+                .onClose(() -> {
+                    try {
+                        iterator.close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
     public static <T> JSONHandler<T> create(Path path, T object)  throws IOException {
         return create(path, object, true);
     }
 
+    public static <T> JSONHandler<T> create(Path path, T object, JSONCodec codec) throws IOException {
+        return new JSONHandler<>(path, object, codec);
+    }
+
     public static <T> JSONHandler<T> create(Path path, T object, boolean replaceExisting) throws IOException {
         if (!replaceExisting && path.toFile().exists()) {
             //noinspection unchecked
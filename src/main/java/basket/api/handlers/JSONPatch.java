@@ -0,0 +1,125 @@
+package basket.api.handlers;
+
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Minimal JSON Patch (RFC 6902) support, limited to the {@code add}, {@code remove} and {@code replace} operations.
+ * <p>
+ * Arrays that change in length are replaced as a whole, so a patch never shifts array elements.
+ * This makes applying the same patch twice give the same result as applying it once.
+ */
+class JSONPatch {
+
+    // This class should not be instantiated
+    private JSONPatch() {}
+
+    /**
+     * Computes the operations that turn {@code source} into {@code target}.
+     * @return an array of operations, empty if the trees are equal
+     */
+    static ArrayNode diff(JsonNode source, JsonNode target) {
+        ArrayNode patch = JsonNodeFactory.instance.arrayNode();
+        diff(patch, "", source, target);
+        return patch;
+    }
+
+    private static void diff(ArrayNode patch, String path, JsonNode source, JsonNode target) {
+        if (source.equals(target)) {
+            return;
+        }
+
+        if (source.isObject() && target.isObject()) {
+            Iterator<Map.Entry<String, JsonNode>> sourceFields = source.fields();
+            while (sourceFields.hasNext()) {
+                Map.Entry<String, JsonNode> field = sourceFields.next();
+                String fieldPath = path + "/" + escape(field.getKey());
+                JsonNode targetValue = target.get(field.getKey());
+
+                if (targetValue == null) {
+                    patch.addObject().put("op", "remove").put("path", fieldPath);
+                } else {
+                    diff(patch, fieldPath, field.getValue(), targetValue);
+                }
+            }
+
+            Iterator<Map.Entry<String, JsonNode>> targetFields = target.fields();
+            while (targetFields.hasNext()) {
+                Map.Entry<String, JsonNode> field = targetFields.next();
+                if (!source.has(field.getKey())) {
+                    patch.addObject()
+                            .put("op", "add")
+                            .put("path", path + "/" + escape(field.getKey()))
+                            .set("value", field.getValue());
+                }
+            }
+        }
+        else if (source.isArray() && target.isArray() && source.size() == target.size()) {
+            for (int i = 0; i < source.size(); i++) {
+                diff(patch, path + "/" + i, source.get(i), target.get(i));
+            }
+        }
+        else {
+            patch.addObject()
+                    .put("op", "replace")
+                    .put("path", path)
+                    .set("value", target);
+        }
+    }
+
+    /**
+     * Applies the operations to {@code document}, changing it in place where possible.
+     * Removing a missing value is ignored.
+     * @return the patched document, which is a new node if the root was replaced
+     * @throws IllegalArgumentException if an operation refers to a location the document does not have
+     */
+    static JsonNode apply(JsonNode document, JsonNode patch) {
+        for (JsonNode operation : patch) {
+            String op = operation.path("op").asText();
+            JsonPointer pointer = JsonPointer.compile(operation.path("path").asText());
+
+            if (pointer.matches()) {
+                if (!op.equals("remove")) {
+                    document = operation.get("value");
+                }
+                continue;
+            }
+
+            JsonNode parent = document.at(pointer.head());
+            String property = pointer.last().getMatchingProperty();
+
+            if (parent instanceof ObjectNode objectParent) {
+                if (op.equals("remove")) {
+                    objectParent.remove(property);
+                } else {
+                    objectParent.set(property, operation.get("value"));
+                }
+            }
+            else if (parent instanceof ArrayNode arrayParent) {
+                int index = pointer.last().getMatchingIndex();
+                if (index < 0 || index >= arrayParent.size()) {
+                    throw new IllegalArgumentException("Array index out of range: " + pointer);
+                }
+                if (op.equals("remove")) {
+                    arrayParent.remove(index);
+                } else {
+                    arrayParent.set(index, operation.get("value"));
+                }
+            }
+            else if (!op.equals("remove")) {
+                throw new IllegalArgumentException("Cannot apply patch at: " + pointer);
+            }
+        }
+
+        return document;
+    }
+
+    private static String escape(String property) {
+        return property.replace("~", "~0").replace("/", "~1");
+    }
+}
@@ -0,0 +1,145 @@
+package basket.api.handlers;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * Watches the files of {@link JSONHandler}s in watch mode, and makes them reload when their file changes.
+ * <p>
+ * One {@code WatchService} is shared by all handlers.
+ * Events for a file are debounced, so a burst of changes results in a single reload.
+ */
+class JSONWatcher {
+
+    // This class should not be instantiated
+    private JSONWatcher() {}
+
+    private static final Duration DEBOUNCE_DELAY = Duration.ofMillis(200);
+
+    private static WatchService watchService;
+    private static ScheduledExecutorService reloader;
+
+    private static final Map<WatchKey, Path> directories = new HashMap<>();
+    private static final Map<Path, Set<JSONHandler<?>>> handlers = new HashMap<>();
+    private static final Map<JSONHandler<?>, ScheduledFuture<?>> pendingReloads = new HashMap<>();
+
+    static synchronized void register(JSONHandler<?> handler, Path path) throws IOException {
+        if (watchService == null) {
+            watchService = FileSystems.getDefault().newWatchService();
+
+            Thread thread = new Thread(JSONWatcher::run, "JSONHandler watcher");
+            thread.setDaemon(true);
+            thread.start();
+
+            reloader = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread reloadThread = new Thread(runnable, "JSONHandler reloader");
+                reloadThread.setDaemon(true);
+                return reloadThread;
+            });
+        }
+
+        Path directory = path.getParent();
+        if (!directories.containsValue(directory)) {
+            directories.put(directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY), directory);
+        }
+
+        handlers.computeIfAbsent(path, key -> new HashSet<>()).add(handler);
+    }
+
+    static synchronized void unregister(JSONHandler<?> handler, Path path) {
+        Set<JSONHandler<?>> pathHandlers = handlers.get(path);
+        if (pathHandlers == null || !pathHandlers.remove(handler)) {
+            return;
+        }
+        if (pathHandlers.isEmpty()) {
+            handlers.remove(path);
+        }
+
+        ScheduledFuture<?> pendingReload = pendingReloads.remove(handler);
+        if (pendingReload != null) {
+            pendingReload.cancel(false);
+        }
+
+        // stop watching the directory once no file in it is watched
+        Path directory = path.getParent();
+        if (handlers.keySet().stream().noneMatch(watched -> watched.getParent().equals(directory))) {
+            directories.entrySet().removeIf(entry -> {
+                if (entry.getValue().equals(directory)) {
+                    entry.getKey().cancel();
+                    return true;
+                }
+                return false;
+            });
+        }
+    }
+
+    private static void run() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            synchronized (JSONWatcher.class) {
+                Path directory = directories.get(key);
+
+                if (directory != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == OVERFLOW) {
+                            // events were lost, so check every file in the directory
+                            handlers.forEach((path, pathHandlers) -> {
+                                if (path.getParent().equals(directory)) {
+                                    pathHandlers.forEach(JSONWatcher::scheduleReload);
+                                }
+                            });
+                            continue;
+                        }
+
+                        String fileName = event.context().toString();
+                        if (fileName.endsWith(".journal")) {
+                            fileName = fileName.substring(0, fileName.length() - ".journal".length());
+                        }
+
+                        handlers.getOrDefault(directory.resolve(fileName), Set.of())
+                                .forEach(JSONWatcher::scheduleReload);
+                    }
+                }
+            }
+
+            key.reset();
+        }
+    }
+
+    private static void scheduleReload(JSONHandler<?> handler) {
+        ScheduledFuture<?> previous = pendingReloads.put(handler, reloader.schedule(() -> {
+            synchronized (JSONWatcher.class) {
+                pendingReloads.remove(handler);
+            }
+            handler.reload();
+        }, DEBOUNCE_DELAY.toMillis(), TimeUnit.MILLISECONDS));
+
+        if (previous != null) {
+            previous.cancel(false);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package basket.api.handlers;
+
+import basket.api.util.Util;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hashes of the files of an installed tree, stored next to it, used to check that the tree is intact.
+ */
+class Manifest {
+
+    // This class should not be instantiated
+    private Manifest() {}
+
+    /**
+     * @param modified the last modified time in milliseconds when the file was last found to match the hash
+     */
+    record FileEntry(long size, long modified, String hash) {}
+
+    record Content(Map<String, FileEntry> files) {}
+
+    static Path getManifestPath(Path root) {
+        return root.resolveSibling(root.getFileName() + ".manifest.json");
+    }
+
+    static void write(Path root) throws IOException {
+        List<Path> files = new ArrayList<>();
+        FileHandler.walkTree(root, new ArrayList<>(), files, null);
+
+        Map<String, FileEntry> entries = new ConcurrentHashMap<>();
+
+        FileHandler.runInParallel(files, FileHandler.DEFAULT_THREADS, null, file -> {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            entries.put(toKey(root, file), new FileEntry(attributes.size(),
+                    attributes.lastModifiedTime().toMillis(), HexFormat.of().formatHex(FileHandler.hash(file))));
+        });
+
+        JSONHandler.create(getManifestPath(root), new Content(new TreeMap<>(entries)), JSONCodec.COMPACT_JSON);
+    }
+
+    static FileHandler.VerifyReport verify(Path root, boolean full) throws IOException {
+        Path manifestPath = getManifestPath(root);
+        if (!Files.exists(manifestPath)) {
+            throw new IOException("No manifest found for " + root);
+        }
+        Map<String, FileEntry> expected = JSONHandler.read(manifestPath, Content.class, JSONCodec.COMPACT_JSON)
+                .getObject().files();
+
+        List<Path> files = new ArrayList<>();
+        FileHandler.walkTree(root, new ArrayList<>(), files, null);
+
+        Set<String> added = ConcurrentHashMap.newKeySet();
+        Set<String> changed = ConcurrentHashMap.newKeySet();
+        Set<String> missing = new HashSet<>(expected.keySet());
+        Map<String, FileEntry> updated = new ConcurrentHashMap<>(expected);
+        AtomicInteger rehashed = new AtomicInteger();
+
+        for (Path file : files) {
+            missing.remove(toKey(root, file));
+        }
+
+        FileHandler.runInParallel(files, FileHandler.DEFAULT_THREADS, null, file -> {
+            String key = toKey(root, file);
+            FileEntry entry = expected.get(key);
+            if (entry == null) {
+                added.add(key);
+                return;
+            }
+
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            if (attributes.size() != entry.size()) {
+                changed.add(key);
+                return;
+            }
+            long modified = attributes.lastModifiedTime().toMillis();
+            if (!full && modified == entry.modified()) {
+                // unchanged since it was last hashed
+                return;
+            }
+
+            rehashed.incrementAndGet();
+            if (HexFormat.of().formatHex(FileHandler.hash(file)).equals(entry.hash())) {
+                // remember the new time, so the file is not hashed again next time
+                updated.put(key, new FileEntry(entry.size(), modified, entry.hash()));
+            } else {
+                changed.add(key);
+            }
+        });
+
+        if (rehashed.get() > 0) {
+            JSONHandler.create(manifestPath, new Content(new TreeMap<>(updated)), JSONCodec.COMPACT_JSON);
+        }
+
+        return new FileHandler.VerifyReport(sorted(missing), sorted(changed), sorted(added), rehashed.get());
+    }
+
+    private static String toKey(Path root, Path file) {
+        return Util.pathToJavaString(root.relativize(file));
+    }
+
+    private static List<String> sorted(Set<String> keys) {
+        List<String> list = new ArrayList<>(keys);
+        Collections.sort(list);
+        return list;
+    }
+}
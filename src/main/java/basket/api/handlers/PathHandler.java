@@ -1,11 +1,11 @@
 package basket.api.handlers;
 
 import basket.api.app.BasketApp;
-import com.sun.jna.Native;
-import com.sun.jna.platform.win32.Shell32;
 import com.sun.jna.platform.win32.ShlObj;
-import com.sun.jna.platform.win32.WinDef;
 import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.jetbrains.annotations.Nullable;
 
 public class PathHandler {
 
@@ -14,15 +14,44 @@ public class PathHandler {
 
     public static final String LAUNCHER_NAME = "Basket";
 
+    /**
+     * Resolves the paths of system folders, like the application data folder, on one platform.
+     */
+    public interface FolderResolver {
+
+        /**
+         * @param location the location to get, use a static attribute of {@code ShlObj} from {@code jna}
+         */
+        Path getPath(int location);
+    }
+
+    private static volatile FolderResolver folderResolver = getDefaultFolderResolver();
+
+    // resolved paths do not change while running, so they are only resolved once
+    private static final Map<Integer, Path> resolvedPaths = new ConcurrentHashMap<>();
+
+    private static FolderResolver getDefaultFolderResolver() {
+        return System.getProperty("os.name").startsWith("Windows")
+                ? new WindowsFolderResolver()
+                : new XDGFolderResolver();
+    }
+
+    /**
+     * Replaces the resolver used for system folders, for example to use temporary folders in tests.
+     * @param resolver the resolver to use, or null to use the one for the current platform
+     */
+    public static void setFolderResolver(@Nullable FolderResolver resolver) {
+        folderResolver = resolver == null ? getDefaultFolderResolver() : resolver;
+        resolvedPaths.clear();
+    }
+
     /**
      * Returns the path of the given location
      * @param location the location to get, use a static attribute of {@code ShlObj} from {@code jna}
      * @return the desired path
      */
     public static Path getPath(int location) {
-        char[] pszPath = new char[WinDef.MAX_PATH];
-        Shell32.INSTANCE.SHGetFolderPath(null, location, null, ShlObj.SHGFP_TYPE_CURRENT, pszPath);
-        return Path.of(Native.toString(pszPath));
+        return resolvedPaths.computeIfAbsent(location, key -> folderResolver.getPath(key));
     }
 
     // --- External ---
@@ -6,10 +6,19 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.nio.file.Path;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
 import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
 import javafx.scene.Parent;
 import javafx.scene.image.Image;
 import javafx.stage.Stage;
@@ -38,21 +47,32 @@ public class StyleHandler {
         return "/basket/api/style/%s.css".formatted(apiStyleName.toLowerCase());
     }
 
-    private final @Nullable JMetro jMetro;
+    private @Nullable Style jMetroStyle;
+
+    // one for every style, so switching styles only changes the instance used,
+    // made when a stage is first styled, so JMetro is not loaded by apps that never show a window
+    private final Map<Style, JMetro> jMetros = new EnumMap<>(Style.class);
 
     private boolean useFXSkins;
 
     private @Nullable String apiFilePath;
 
-    private final List<String> filePaths;
+    private final ObservableList<String> filePaths;
+
+    // resolved once, and again only when the style changes
+    private @Nullable List<String> styleSheetPaths;
+
+    // stylesheets are resolved again when the style changes, but missing ones are only reported once
+    private static final Set<String> reportedMissingPaths = ConcurrentHashMap.newKeySet();
+
+    // every stylesheet added by this handler, to tell them apart from stylesheets added by the app
+    private final Set<String> appliedStyleSheetPaths = new HashSet<>();
+
+    private static volatile @Nullable Image icon;
 
     public StyleHandler(@Nullable Style jMetroStyle, boolean useFXSkins,
                         @Nullable ApiStyle apiStyle, @Nullable List<String> filePaths) {
-        if (jMetroStyle != null) {
-            this.jMetro = new JMetro(jMetroStyle);
-        } else {
-            this.jMetro = null;
-        }
+        this.jMetroStyle = jMetroStyle;
 
         this.useFXSkins = useFXSkins;
 
@@ -60,14 +80,16 @@ public class StyleHandler {
             this.apiFilePath = apiStyleToFilePath(apiStyle);
         }
         if (filePaths != null) {
-            this.filePaths = new LinkedList<>(filePaths);
+            this.filePaths = FXCollections.observableArrayList(filePaths);
         } else {
-            this.filePaths = new LinkedList<>();
+            this.filePaths = FXCollections.observableArrayList();
         }
+        this.filePaths.addListener((ListChangeListener<String>) change -> invalidateStyleSheetPaths());
     }
 
     public void setUseFXSkins(boolean useFXSkins) {
         this.useFXSkins = useFXSkins;
+        invalidateStyleSheetPaths();
     }
 
     public void setApiStyle(@Nullable ApiStyle apiStyle) {
@@ -76,14 +98,32 @@ public class StyleHandler {
         } else {
             this.apiFilePath = apiStyleToFilePath(apiStyle);
         }
+        invalidateStyleSheetPaths();
     }
 
+    /**
+     * Returns the paths of the stylesheets of the app, which can be changed.
+     */
     public List<String> getFilePaths() {
         return filePaths;
     }
 
-    private List<String> getStyleSheetPaths() {
-        List<String> paths = new LinkedList<>();
+    private synchronized void invalidateStyleSheetPaths() {
+        styleSheetPaths = null;
+    }
+
+    /**
+     * Returns the URLs of all stylesheets, which are only resolved again after the style has changed.
+     */
+    private synchronized List<String> getStyleSheetPaths() {
+        if (styleSheetPaths == null) {
+            styleSheetPaths = List.copyOf(resolveStyleSheetPaths());
+        }
+        return styleSheetPaths;
+    }
+
+    private List<String> resolveStyleSheetPaths() {
+        List<String> paths = new ArrayList<>();
 
         if (useFXSkins) {
             paths.add(FXSkins.getStylesheetURL());
@@ -103,17 +143,36 @@ public class StyleHandler {
         return paths;
     }
 
+    /**
+     * Resolves the stylesheets and decodes the app icon ahead of time.
+     * Can be called from any thread, so the work can be done while the app is starting.
+     */
+    public void preload() {
+        getStyleSheetPaths();
+        loadIcon();
+    }
+
     private Optional<String> loadAndGetStylesheet(Class<?> loadingClass, String path) {
         URL url = loadingClass.getResource(Util.pathToJavaString(path));
         if (url != null) {
             return Optional.of(url.toExternalForm());
         } else {
-            System.err.println("Unable to get stylesheet at: " + path);
+            if (reportedMissingPaths.add(path)) {
+                System.err.println("Unable to get stylesheet at: " + path);
+            }
             return Optional.empty();
         }
     }
 
     public void applyStyleToApplication() {
+        applyStyleToApplication(() -> this);
+    }
+
+    /**
+     * Styles every stage that is shown from now on, with the handler from the supplier.
+     * The supplier is only called when the first stage is shown.
+     */
+    public static void applyStyleToApplication(Supplier<StyleHandler> styleHandler) {
         Window.getWindows().addListener((ListChangeListener<? super Window>) event -> {
             event.next();
             for (Window window : event.getAddedSubList()) {
@@ -125,63 +184,152 @@ public class StyleHandler {
                     continue;
                 }
 
-                styleStage(stage);
+                styleHandler.get().styleStage(stage);
             }
         });
     }
 
+    private @Nullable JMetro getJMetro() {
+        if (jMetroStyle == null) {
+            return null;
+        }
+        if (jMetros.isEmpty()) {
+            for (Style style : Style.values()) {
+                jMetros.put(style, new JMetro(style));
+            }
+        }
+        return jMetros.get(jMetroStyle);
+    }
+
     public void styleStage(Stage stage) {
-        Parent root = stage.getScene().getRoot();
+        styleRoot(stage.getScene().getRoot());
+
+        setIcon(stage);
+    }
+
+    void styleRoot(Parent root) {
+        JMetro jMetro = getJMetro();
         if (jMetro != null) {
             root.getStyleClass().add(JMetroStyleClass.BACKGROUND);
-            jMetro.setParent(root);
+            setJMetroParent(jMetro, root);
         }
 
-        root.getStylesheets().addAll(getStyleSheetPaths());
+        applyStyleSheets(root.getStylesheets(), getStyleSheetPaths());
+    }
 
-        setIcon(stage);
+    private static void setJMetroParent(JMetro jMetro, Parent root) {
+        // setting the same parent again does nothing, while another style may have replaced the stylesheets since
+        if (jMetro.getParent() == root) {
+            jMetro.reApplyTheme();
+        } else {
+            jMetro.setParent(root);
+        }
     }
 
     public void reStyleJMetro(Style jMetroStyle) {
-        if (jMetro != null) {
-            jMetro.setStyle(jMetroStyle);
+        reStyle(jMetroStyle, false);
+    }
+
+    public void reApplyStyleSheets() {
+        reStyle(null, true);
+    }
 
+    /**
+     * Updates the style of all windows at once, so they are restyled in a single pulse.
+     * Only stylesheets that changed are added or removed, windows whose stylesheets did not change are left alone.
+     * @param jMetroStyle the new JMetro style, or null to keep the current one
+     * @param styleSheets whether to apply changes to the stylesheets
+     */
+    public void reStyle(@Nullable Style jMetroStyle, boolean styleSheets) {
+        runOnFXThread(() -> {
+            List<Parent> roots = new ArrayList<>();
             for (Window window : Window.getWindows()) {
-                Stage stage;
-                try {
-                    stage = (Stage) window;
-                } catch (ClassCastException e) {
-                    continue;
+                if (window instanceof Stage stage && stage.getScene() != null) {
+                    roots.add(stage.getScene().getRoot());
                 }
-                Parent root = stage.getScene().getRoot();
-                jMetro.setParent(root);
             }
-        }
+            reStyle(jMetroStyle, styleSheets, roots);
+        });
     }
 
-    public void reApplyStyleSheets() {
-        for (Window window : Window.getWindows()) {
-            Stage stage;
-            try {
-                stage = (Stage) window;
-            } catch (ClassCastException e) {
-                continue;
+    void reStyle(@Nullable Style jMetroStyle, boolean styleSheets, List<Parent> roots) {
+        JMetro jMetro = null;
+        if (jMetroStyle != null && this.jMetroStyle != null && jMetroStyle != this.jMetroStyle) {
+            this.jMetroStyle = jMetroStyle;
+            // without instances no stage has been styled yet, and the new style is used for the first one
+            if (!jMetros.isEmpty()) {
+                jMetro = getJMetro();
+            }
+        }
+        List<String> paths = styleSheets ? getStyleSheetPaths() : null;
+
+        for (Parent root : roots) {
+            if (jMetro != null) {
+                // replaces the stylesheets of the other style
+                setJMetroParent(jMetro, root);
+            }
+            if (paths != null) {
+                applyStyleSheets(root.getStylesheets(), paths);
             }
-            Parent root = stage.getScene().getRoot();
+        }
+    }
+
+    /**
+     * Makes the stylesheets of this handler in the list match the given paths, in a single change.
+     * Stylesheets added by the app keep their place.
+     */
+    private void applyStyleSheets(ObservableList<String> styleSheets, List<String> paths) {
+        List<String> current = styleSheets.stream().filter(appliedStyleSheetPaths::contains).toList();
+        appliedStyleSheetPaths.addAll(paths);
+        if (current.equals(paths)) {
+            return;
+        }
+
+        // insert where the stylesheets of this handler were, or at the end if there were none
+        int index = 0;
+        while (index < styleSheets.size() && !appliedStyleSheetPaths.contains(styleSheets.get(index))) {
+            index++;
+        }
+
+        List<String> updated = new ArrayList<>(styleSheets);
+        updated.removeIf(appliedStyleSheetPaths::contains);
+        updated.addAll(Math.min(index, updated.size()), paths);
+        styleSheets.setAll(updated);
+    }
 
-            root.getStylesheets().removeAll();
-            root.getStylesheets().addAll(getStyleSheetPaths());
+    private static void runOnFXThread(Runnable action) {
+        if (Platform.isFxApplicationThread()) {
+            action.run();
+        } else {
+            Platform.runLater(action);
         }
     }
 
     public static void setIcon(Stage stage) {
+        Image loadedIcon = loadIcon();
+        if (loadedIcon != null) {
+            stage.getIcons().clear();
+            stage.getIcons().add(loadedIcon);
+        }
+    }
+
+    /**
+     * Returns the app icon, which is only decoded once.
+     */
+    private static @Nullable Image loadIcon() {
+        Image loadedIcon = icon;
+        if (loadedIcon != null) {
+            return loadedIcon;
+        }
+
         Path path = PathHandler.getIconPath();
 
         try (InputStream in = getImplementingClass().getResourceAsStream(Util.pathToJavaString(path))) {
             InputStream iconStream = requireNonNull(in);
 
-            stage.getIcons().clear();
-            stage.getIcons().add(new Image(iconStream));
+            loadedIcon = new Image(iconStream);
+            icon = loadedIcon;
+            return loadedIcon;
         }
         catch (IOException e) {
             e.printStackTrace();
@@ -190,5 +338,6 @@ public class StyleHandler {
             System.err.println("Could not find app icon");
             e.printStackTrace();
         }
+        return null;
     }
 }
@@ -0,0 +1,20 @@
+package basket.api.handlers;
+
+import com.sun.jna.Native;
+import com.sun.jna.platform.win32.Shell32;
+import com.sun.jna.platform.win32.ShlObj;
+import com.sun.jna.platform.win32.WinDef;
+import java.nio.file.Path;
+
+/**
+ * Resolves folders with the {@code SHGetFolderPath} call of the Windows shell.
+ */
+class WindowsFolderResolver implements PathHandler.FolderResolver {
+
+    @Override
+    public Path getPath(int location) {
+        char[] pszPath = new char[WinDef.MAX_PATH];
+        Shell32.INSTANCE.SHGetFolderPath(null, location, null, ShlObj.SHGFP_TYPE_CURRENT, pszPath);
+        return Path.of(Native.toString(pszPath));
+    }
+}
@@ -0,0 +1,36 @@
+package basket.api.handlers;
+
+import com.sun.jna.platform.win32.ShlObj;
+import java.nio.file.Path;
+
+/**
+ * Resolves folders on Linux and other Unix systems, following the XDG base directory specification.
+ */
+class XDGFolderResolver implements PathHandler.FolderResolver {
+
+    @Override
+    public Path getPath(int location) {
+        Path home = Path.of(System.getProperty("user.home"));
+
+        return switch (location) {
+            case ShlObj.CSIDL_APPDATA, ShlObj.CSIDL_LOCAL_APPDATA, ShlObj.CSIDL_COMMON_APPDATA ->
+                    getEnvironmentPath("XDG_DATA_HOME", home.resolve(".local/share"));
+            case ShlObj.CSIDL_PROFILE -> home;
+            case ShlObj.CSIDL_DESKTOP, ShlObj.CSIDL_DESKTOPDIRECTORY -> home.resolve("Desktop");
+            case ShlObj.CSIDL_PERSONAL -> home.resolve("Documents");
+            case ShlObj.CSIDL_MYMUSIC -> home.resolve("Music");
+            case ShlObj.CSIDL_MYPICTURES -> home.resolve("Pictures");
+            case ShlObj.CSIDL_MYVIDEO -> home.resolve("Videos");
+            default -> throw new UnsupportedOperationException("Unsupported location: " + location);
+        };
+    }
+
+    private static Path getEnvironmentPath(String variable, Path defaultPath) {
+        String value = System.getenv(variable);
+        // relative paths are invalid according to the specification
+        if (value == null || value.isEmpty() || !Path.of(value).isAbsolute()) {
+            return defaultPath;
+        }
+        return Path.of(value);
+    }
+}
@@ -0,0 +1,28 @@
+package basket.api.util;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Token that can be passed to long-running operations, to cancel them from another thread.
+ */
+public class CancellationToken {
+
+    private volatile boolean cancelled;
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Throws a {@code CancellationException} if the token has been cancelled.
+     */
+    public void throwIfCancelled() {
+        if (cancelled) {
+            throw new CancellationException("Operation was cancelled");
+        }
+    }
+}
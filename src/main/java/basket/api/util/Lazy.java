@@ -0,0 +1,40 @@
+package basket.api.util;
+
+import java.util.function.Supplier;
+
+/**
+ * Holder of a value that is only created when it is first needed, and then reused.
+ * Safe to use from multiple threads, the value is created at most once.
+ * If creating the value fails, it is tried again on the next call.
+ * @param <T> the type of the value
+ */
+public class Lazy<T> {
+
+    private final Supplier<T> supplier;
+
+    private volatile boolean initialized;
+    private T value;
+
+    public Lazy(Supplier<T> supplier) {
+        this.supplier = supplier;
+    }
+
+    public T get() {
+        if (!initialized) {
+            synchronized (this) {
+                if (!initialized) {
+                    value = supplier.get();
+                    initialized = true;
+                }
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Returns whether the value has been created, without creating it.
+     */
+    public boolean isInitialized() {
+        return initialized;
+    }
+}
@@ -1,5 +1,6 @@
 package basket.api.util;
 
+import basket.api.handlers.JSONHandler;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 import javafx.collections.ListChangeListener;
@@ -24,4 +25,13 @@ public class Threads {
             }
         });
     }
+
+    public static void addJSONHandlerFlushOnJavaFXApplicationClose() {
+        Window.getWindows().addListener((ListChangeListener<? super Window>) event -> {
+            event.next();
+            if (event.getList().size() == 0) {
+                JSONHandler.flushAll();
+            }
+        });
+    }
 }
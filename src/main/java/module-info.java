@@ -6,8 +6,12 @@ module basket.api {
     requires com.fasterxml.jackson.annotation;
     requires com.fasterxml.jackson.databind;
     requires com.fasterxml.jackson.datatype.jsr310;
+    requires com.fasterxml.jackson.dataformat.smile;
+    requires com.fasterxml.jackson.dataformat.cbor;
     requires com.pixelduke.fxskins;
 
+    requires java.management;
+
     requires javafx.controls;
     requires javafx.fxml;
 
@@ -0,0 +1,117 @@
+package basket.api.handlers;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares {@link FileHandler#extractArchive} with a plain single-threaded {@link ZipInputStream} extraction,
+ * on an archive of many small files and on one of a few large files.
+ * Run the main method with the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ArchiveExtractionBenchmark {
+
+    @Param({"SMALL_FILES", "LARGE_FILES"})
+    public String shape;
+
+    private Path directory;
+    private Path archive;
+    private Path destination;
+
+    @Setup(Level.Trial)
+    public void createArchive() throws IOException {
+        directory = Files.createTempDirectory("extraction-benchmark");
+        archive = directory.resolve("archive.zip");
+
+        int files = shape.equals("SMALL_FILES") ? 2000 : 8;
+        int size = shape.equals("SMALL_FILES") ? 16 * 1024 : 16 * 1024 * 1024;
+
+        Random random = new Random(42);
+        byte[] content = new byte[size];
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(archive))) {
+            for (int i = 0; i < files; i++) {
+                // half random, half repeated, so the entries compress like real files
+                random.nextBytes(content);
+                for (int j = size / 2; j < size; j++) {
+                    content[j] = (byte) (j % 64);
+                }
+                out.putNextEntry(new ZipEntry("dir" + i % 20 + "/file" + i));
+                out.write(content);
+                out.closeEntry();
+            }
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void chooseDestination() throws IOException {
+        destination = Files.createTempDirectory(directory, "destination");
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteDestination() throws IOException {
+        FileHandler.deletePathAndContent(destination);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteArchive() throws IOException {
+        FileHandler.deletePathAndContent(directory);
+    }
+
+    @Benchmark
+    public void extractArchive() throws IOException {
+        FileHandler.extractArchive(archive, destination);
+    }
+
+    @Benchmark
+    public void zipInputStream() throws IOException {
+        try (ZipInputStream in = new ZipInputStream(new BufferedInputStream(Files.newInputStream(archive)))) {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                Path target = destination.resolve(entry.getName());
+                if (entry.isDirectory()) {
+                    Files.createDirectories(target);
+                    continue;
+                }
+                Files.createDirectories(target.getParent());
+                try (OutputStream out = Files.newOutputStream(target)) {
+                    in.transferTo(out);
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ArchiveExtractionBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
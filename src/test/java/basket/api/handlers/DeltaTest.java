@@ -0,0 +1,213 @@
+package basket.api.handlers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static basket.api.handlers.Delta.BLOCK_SIZE;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeltaTest {
+
+    @TempDir
+    Path directory;
+
+    private final Random random = new Random(42);
+
+    private byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.writeBytes(part);
+        }
+        return out.toByteArray();
+    }
+
+    private Path getOldRoot() {
+        return directory.resolve("old");
+    }
+
+    private Path getNewRoot() {
+        return directory.resolve("new");
+    }
+
+    private Path getPatch() {
+        return directory.resolve("patch.delta");
+    }
+
+    private static void write(Path root, String name, byte[] content) throws IOException {
+        Path file = root.resolve(name);
+        Files.createDirectories(file.getParent());
+        Files.write(file, content);
+    }
+
+    private static List<String> listTree(Path root) throws IOException {
+        List<Path> directories = new ArrayList<>();
+        List<Path> files = new ArrayList<>();
+        FileHandler.walkTree(root, directories, files, null);
+
+        List<String> names = new ArrayList<>();
+        for (Path path : directories) {
+            names.add(root.relativize(path) + "/");
+        }
+        for (Path path : files) {
+            names.add(root.relativize(path).toString());
+        }
+        names.sort(null);
+        return names;
+    }
+
+    /**
+     * Makes a patch from the old to the new version, applies it, and checks that it rebuilt the new version.
+     * @return the size of the patch
+     */
+    private long roundTrip() throws IOException {
+        Delta.create(getOldRoot(), getNewRoot(), getPatch());
+        try (Stream<Path> paths = Files.list(directory)) {
+            assertTrue(paths.noneMatch(path -> path.getFileName().toString().startsWith(".delta.")));
+        }
+
+        Path rebuilt = directory.resolve("rebuilt");
+        Delta.apply(getPatch(), getOldRoot(), rebuilt);
+
+        assertEquals(listTree(getNewRoot()), listTree(rebuilt));
+        for (String name : listTree(getNewRoot())) {
+            if (!name.endsWith("/")) {
+                assertArrayEquals(Files.readAllBytes(getNewRoot().resolve(name)),
+                        Files.readAllBytes(rebuilt.resolve(name)));
+            }
+        }
+        return Files.size(getPatch());
+    }
+
+    @Test
+    void insertion() throws IOException {
+        byte[] before = randomBytes(20 * BLOCK_SIZE);
+        byte[] after = concat(Arrays.copyOfRange(before, 0, 7 * BLOCK_SIZE + 123),
+                randomBytes(500), Arrays.copyOfRange(before, 7 * BLOCK_SIZE + 123, before.length));
+        write(getOldRoot(), "file", before);
+        write(getNewRoot(), "file", after);
+
+        // only the inserted bytes and the blocks around them are stored
+        assertTrue(roundTrip() < 4 * BLOCK_SIZE);
+    }
+
+    @Test
+    void deletion() throws IOException {
+        byte[] before = randomBytes(20 * BLOCK_SIZE);
+        byte[] after = concat(Arrays.copyOfRange(before, 0, 3 * BLOCK_SIZE + 17),
+                Arrays.copyOfRange(before, 9 * BLOCK_SIZE + 5, before.length));
+        write(getOldRoot(), "file", before);
+        write(getNewRoot(), "file", after);
+
+        assertTrue(roundTrip() < 3 * BLOCK_SIZE);
+    }
+
+    @Test
+    void shrinkage() throws IOException {
+        byte[] before = randomBytes(10 * BLOCK_SIZE + 100);
+        write(getOldRoot(), "truncated", before);
+        write(getNewRoot(), "truncated", Arrays.copyOf(before, 4 * BLOCK_SIZE + 7));
+        write(getOldRoot(), "emptied", before);
+        write(getNewRoot(), "emptied", new byte[0]);
+        write(getOldRoot(), "smaller than a block", before);
+        write(getNewRoot(), "smaller than a block", Arrays.copyOf(before, BLOCK_SIZE - 1));
+
+        roundTrip();
+    }
+
+    @Test
+    void blockBoundaries() throws IOException {
+        byte[] before = randomBytes(8 * BLOCK_SIZE);
+        write(getOldRoot(), "inserted block", before);
+        write(getNewRoot(), "inserted block", concat(Arrays.copyOf(before, 4 * BLOCK_SIZE),
+                randomBytes(BLOCK_SIZE), Arrays.copyOfRange(before, 4 * BLOCK_SIZE, before.length)));
+        write(getOldRoot(), "removed last block", before);
+        write(getNewRoot(), "removed last block", Arrays.copyOf(before, 7 * BLOCK_SIZE));
+        write(getOldRoot(), "one block", Arrays.copyOf(before, BLOCK_SIZE));
+        write(getNewRoot(), "one block", Arrays.copyOfRange(before, BLOCK_SIZE, 2 * BLOCK_SIZE));
+        write(getOldRoot(), "grown by a byte", before);
+        write(getNewRoot(), "grown by a byte", concat(before, new byte[] {1}));
+
+        roundTrip();
+    }
+
+    @Test
+    void addedRemovedAndUnchangedFiles() throws IOException {
+        byte[] unchanged = randomBytes(3 * BLOCK_SIZE);
+        write(getOldRoot(), "lib/unchanged.jar", unchanged);
+        write(getNewRoot(), "lib/unchanged.jar", unchanged);
+        write(getOldRoot(), "lib/removed.jar", randomBytes(1000));
+        write(getOldRoot(), "removed directory/file", randomBytes(10));
+        write(getNewRoot(), "lib/added.jar", randomBytes(5000));
+        Files.createDirectories(getNewRoot().resolve("empty directory"));
+
+        roundTrip();
+    }
+
+    @Test
+    void rejectsTamperedPatch() throws IOException {
+        byte[] before = randomBytes(10 * BLOCK_SIZE);
+        byte[] marker = "inserted by the new version".getBytes(StandardCharsets.UTF_8);
+        write(getOldRoot(), "file", before);
+        write(getNewRoot(), "file", concat(Arrays.copyOf(before, 5 * BLOCK_SIZE), marker,
+                Arrays.copyOfRange(before, 5 * BLOCK_SIZE, before.length)));
+        Delta.create(getOldRoot(), getNewRoot(), getPatch());
+
+        // change one of the inserted bytes, keeping the patch valid otherwise
+        byte[] content;
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(getPatch()))) {
+            content = in.readAllBytes();
+        }
+        int index = indexOf(content, marker);
+        assertTrue(index >= 0);
+        content[index] ^= 1;
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(getPatch()))) {
+            out.write(content);
+        }
+
+        assertThrows(IOException.class, () -> Delta.apply(getPatch(), getOldRoot(), directory.resolve("rebuilt")));
+    }
+
+    @Test
+    void rejectsPatchForOtherVersion() throws IOException {
+        byte[] before = randomBytes(10 * BLOCK_SIZE);
+        write(getOldRoot(), "file", before);
+        write(getNewRoot(), "file", concat(before, randomBytes(100)));
+        Delta.create(getOldRoot(), getNewRoot(), getPatch());
+
+        write(getOldRoot(), "file", randomBytes(10 * BLOCK_SIZE));
+
+        assertThrows(IOException.class, () -> Delta.apply(getPatch(), getOldRoot(), directory.resolve("rebuilt")));
+    }
+
+    private static int indexOf(byte[] bytes, byte[] part) {
+        for (int i = 0; i + part.length <= bytes.length; i++) {
+            if (Arrays.equals(bytes, i, i + part.length, part, 0, part.length)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,139 @@
+package basket.api.handlers;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JSONHandlerConcurrencyTest {
+
+    private static final int THREADS = 8;
+    private static final int UPDATES_PER_THREAD = 100;
+
+    // both counts are always changed together, so a reader that sees them differ saw a partial update
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    record Counter(int first, int second) {
+
+        Counter increment() {
+            return new Counter(first + 1, second + 1);
+        }
+
+        // makes serializing sometimes slow, so that saves overlap more
+        @JsonProperty
+        int delay() throws InterruptedException {
+            if (ThreadLocalRandom.current().nextInt(2) == 0) {
+                Thread.sleep(1);
+            }
+            return 0;
+        }
+    }
+
+    @TempDir
+    Path directory;
+
+    private Path getFile() {
+        return directory.resolve("counter.json");
+    }
+
+    private Counter readFile() throws IOException {
+        return new JSONHandler<>(getFile(), Counter.class).getObject();
+    }
+
+    private void updateConcurrently(JSONHandler<Counter> handler) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < UPDATES_PER_THREAD; j++) {
+                        handler.update(Counter::increment);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void persistsLastUpdate() throws Exception {
+        JSONHandler<Counter> handler = JSONHandler.create(getFile(), new Counter(0, 0));
+
+        updateConcurrently(handler);
+
+        Counter expected = new Counter(THREADS * UPDATES_PER_THREAD, THREADS * UPDATES_PER_THREAD);
+        assertEquals(expected, handler.getObject());
+        assertEquals(expected, readFile());
+    }
+
+    @Test
+    void persistsLastUpdateWithWriteBehind() throws Exception {
+        JSONHandler<Counter> handler = JSONHandler.create(getFile(), new Counter(0, 0));
+        handler.setWriteBehind(Duration.ofMillis(1));
+
+        updateConcurrently(handler);
+        handler.flush();
+
+        Counter expected = new Counter(THREADS * UPDATES_PER_THREAD, THREADS * UPDATES_PER_THREAD);
+        assertEquals(expected, readFile());
+    }
+
+    @Test
+    void persistsLastUpdateWhenJournaled() throws Exception {
+        JSONHandler<Counter> handler = JSONHandler.create(getFile(), new Counter(0, 0));
+        handler.setJournaled(true);
+
+        updateConcurrently(handler);
+        handler.setJournaled(false);
+
+        Counter expected = new Counter(THREADS * UPDATES_PER_THREAD, THREADS * UPDATES_PER_THREAD);
+        assertEquals(expected, readFile());
+    }
+
+    @Test
+    void readersNeverSeePartialUpdates() throws Exception {
+        JSONHandler<Counter> handler = JSONHandler.create(getFile(), new Counter(0, 0));
+        handler.setWriteBehind(true);
+
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicBoolean consistent = new AtomicBoolean(true);
+        Thread reader = new Thread(() -> {
+            int last = 0;
+            while (!done.get()) {
+                Counter counter = handler.getObject();
+                if (counter.first() != counter.second() || counter.first() < last) {
+                    consistent.set(false);
+                }
+                last = counter.first();
+            }
+        });
+        reader.start();
+
+        try {
+            updateConcurrently(handler);
+        } finally {
+            done.set(true);
+            reader.join();
+            handler.flush();
+        }
+
+        assertTrue(consistent.get(), "a reader saw a partial or older update");
+    }
+}
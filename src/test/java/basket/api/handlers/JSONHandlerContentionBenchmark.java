@@ -0,0 +1,86 @@
+package basket.api.handlers;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the throughput of {@link JSONHandler#getObject()} while another thread keeps calling
+ * {@link JSONHandler#update}, compared with reading without any updates.
+ * Run the main method with the test classpath.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class JSONHandlerContentionBenchmark {
+
+    public record Settings(String theme, int volume, boolean notifications, List<String> recentFiles) {}
+
+    private Path directory;
+    private JSONHandler<Settings> handler;
+
+    @Setup(Level.Trial)
+    public void createHandler() throws IOException {
+        directory = Files.createTempDirectory("contention-benchmark");
+        handler = JSONHandler.create(directory.resolve("settings.json"),
+                new Settings("dark", 50, true, List.of("a.txt", "b.txt", "c.txt")));
+        // keeps disk writes out of the measurement, as settings are saved in the background by apps
+        handler.setWriteBehind(true);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteHandler() throws IOException {
+        handler.setWriteBehind(false);
+        FileHandler.deletePathAndContent(directory);
+    }
+
+    @Benchmark
+    @Group("uncontended")
+    @GroupThreads(4)
+    public int readUncontended() {
+        return handler.getObject().volume();
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(3)
+    public int read() {
+        return handler.getObject().volume();
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public Settings update() throws IOException {
+        return handler.update(settings -> new Settings(settings.theme(), (settings.volume() + 1) % 100,
+                settings.notifications(), settings.recentFiles()));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(JSONHandlerContentionBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
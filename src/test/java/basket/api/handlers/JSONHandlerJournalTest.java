@@ -0,0 +1,126 @@
+package basket.api.handlers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class JSONHandlerJournalTest {
+
+    // keeps the file larger than the journal, so saves do not compact it
+    private static final String PADDING = "\"padding\": \"" + "x".repeat(4000) + "\"";
+
+    @TempDir
+    Path directory;
+
+    private static JsonNode json(String text) throws IOException {
+        return JSONHandler.objectMapper.readTree(text);
+    }
+
+    private Path getFile() {
+        return directory.resolve("data.json");
+    }
+
+    private Path getJournal() {
+        return directory.resolve("data.json.journal");
+    }
+
+    private JSONHandler<JsonNode> saveJournaled(String initial, String... saves) throws IOException {
+        JSONHandler<JsonNode> handler = JSONHandler.create(getFile(), json(initial));
+        handler.setJournaled(true);
+        for (String save : saves) {
+            handler.save(json(save));
+        }
+        return handler;
+    }
+
+    /**
+     * Leaves the file compacted with the journal still next to it, like a crash during a compaction.
+     */
+    private void crashDuringCompaction(String initial, String... saves) throws IOException {
+        JSONHandler<JsonNode> handler = saveJournaled(initial, saves);
+        byte[] journal = Files.readAllBytes(getJournal());
+        handler.compact();
+        Files.write(getJournal(), journal);
+    }
+
+    private JsonNode read() throws IOException {
+        return new JSONHandler<>(getFile(), JsonNode.class).getObject();
+    }
+
+    @Test
+    void replaysJournal() throws IOException {
+        String last = "{\"a\": {\"b\": 2}, \"arr\": [1, 2], " + PADDING + "}";
+        saveJournaled("{\"a\": {\"b\": 1}, \"arr\": [1, 2, 3], " + PADDING + "}",
+                "{\"a\": {\"b\": 1}, \"arr\": [1, 2, 4], " + PADDING + "}",
+                last);
+
+        assertEquals(true, Files.exists(getJournal()));
+        assertEquals(json(last), read());
+    }
+
+    @Test
+    void ignoresJournalOfCompactedFileAfterArrayShrinks() throws IOException {
+        String last = "{\"arr\": [0, 1], " + PADDING + "}";
+        crashDuringCompaction("{\"arr\": [0, 1, 2, 3], " + PADDING + "}",
+                "{\"arr\": [0, 1, 2, 9], " + PADDING + "}",
+                last);
+
+        assertEquals(json(last), read());
+    }
+
+    @Test
+    void ignoresJournalOfCompactedFileAfterParentRemoved() throws IOException {
+        String last = "{\"a\": 5, " + PADDING + "}";
+        crashDuringCompaction("{\"a\": {\"b\": 1}, " + PADDING + "}",
+                "{\"a\": {\"b\": 2}, " + PADDING + "}",
+                "{" + PADDING + "}",
+                last);
+
+        assertEquals(json(last), read());
+    }
+
+    @Test
+    void compactsAfterCrashedCompaction() throws IOException {
+        String last = "{\"arr\": [0, 1], " + PADDING + "}";
+        crashDuringCompaction("{\"arr\": [0, 1, 2, 3], " + PADDING + "}",
+                "{\"arr\": [0, 1, 2, 9], " + PADDING + "}",
+                last);
+
+        JSONHandler<JsonNode> handler = new JSONHandler<>(getFile(), JsonNode.class);
+        handler.setJournaled(true);
+
+        assertEquals(false, Files.exists(getJournal()));
+        assertEquals(json(last), read());
+    }
+
+    @Test
+    void doesNotReplayJournalAfterSavingItsBase() throws IOException {
+        String first = "{\"arr\": [0, 1, 2, 3], " + PADDING + "}";
+        crashDuringCompaction(first,
+                "{\"arr\": [0, 1, 2, 9], " + PADDING + "}",
+                "{\"arr\": [0, 1], " + PADDING + "}");
+
+        // returns the file to the state the journal was written for
+        JSONHandler<JsonNode> handler = new JSONHandler<>(getFile(), JsonNode.class);
+        handler.save(json(first));
+
+        assertEquals(false, Files.exists(getJournal()));
+        assertEquals(json(first), read());
+    }
+
+    @Test
+    void skipsEntriesThatDoNotApply() throws IOException {
+        String second = "{\"arr\": [0, 1, 2, 9], " + PADDING + "}";
+        saveJournaled("{\"arr\": [0, 1, 2, 3], " + PADDING + "}", second);
+        Files.writeString(getJournal(), "[{\"op\":\"replace\",\"path\":\"/arr/7\",\"value\":1}]"
+                + System.lineSeparator(), StandardOpenOption.APPEND);
+
+        assertEquals(json(second), read());
+    }
+}
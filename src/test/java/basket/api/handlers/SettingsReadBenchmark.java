@@ -0,0 +1,121 @@
+package basket.api.handlers;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares reading settings straight into the settings class, as {@code BasketApp.launch} does,
+ * with reading them into maps and lists and converting those afterwards.
+ * <p>
+ * The {@code cold} benchmarks measure the first read in a new JVM, which is what an app pays at startup,
+ * and the others measure a warmed up read. Run the main method with the test classpath,
+ * which adds the GC profiler to report the allocations per read as {@code gc.alloc.rate.norm}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SettingsReadBenchmark {
+
+    public record Window(int x, int y, int width, int height, boolean maximized) {}
+
+    public record Plugin(String id, String version, boolean enabled, Map<String, String> options) {}
+
+    public record Settings(String theme, String language, int fontSize, boolean autoUpdate,
+                           Window window, List<String> recentFiles,
+                           Map<String, String> keyBindings, List<Plugin> plugins) {}
+
+    private Path directory;
+    private Path settingsPath;
+
+    @Setup(Level.Trial)
+    public void writeSettings() throws IOException {
+        List<String> recentFiles = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            recentFiles.add("/home/user/documents/project " + i + "/notes.txt");
+        }
+        Map<String, String> keyBindings = new LinkedHashMap<>();
+        for (int i = 0; i < 100; i++) {
+            keyBindings.put("action." + i, "Ctrl+Shift+" + (char) ('A' + i % 26));
+        }
+        List<Plugin> plugins = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            plugins.add(new Plugin("plugin-" + i, "1." + i + ".0", i % 3 != 0,
+                    Map.of("interval", String.valueOf(i * 10), "mode", "auto")));
+        }
+        Settings settings = new Settings("dark", "en", 14, true, new Window(100, 80, 1280, 800, false),
+                recentFiles, keyBindings, plugins);
+
+        directory = Files.createTempDirectory("settings-benchmark");
+        settingsPath = directory.resolve("settings.json");
+        JSONHandler.create(settingsPath, settings);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteSettings() throws IOException {
+        FileHandler.deletePathAndContent(directory);
+    }
+
+    @Benchmark
+    public Settings readDirect() throws IOException {
+        return JSONHandler.read(settingsPath, Settings.class).getObject();
+    }
+
+    @Benchmark
+    public Settings readThenConvert() throws IOException {
+        JSONHandler<Object> handler = JSONHandler.read(settingsPath);
+        handler.convertObjectTo(Settings.class);
+        return handler.getConvertedObject(Settings.class);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    @Fork(20)
+    public Settings coldReadDirect() throws IOException {
+        return readDirect();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    @Fork(20)
+    public Settings coldReadThenConvert() throws IOException {
+        return readThenConvert();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(SettingsReadBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,33 @@
+package basket.api.handlers;
+
+import java.util.List;
+import javafx.scene.Group;
+import javafx.scene.Parent;
+import jfxtras.styles.jmetro.JMetro;
+import jfxtras.styles.jmetro.Style;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StyleHandlerTest {
+
+    private static List<String> getJMetroStyleSheets(Style style) {
+        Parent root = new Group();
+        new JMetro(root, style);
+        return List.copyOf(root.getStylesheets());
+    }
+
+    @Test
+    void switchesBackToFirstStyle() {
+        StyleHandler styleHandler = new StyleHandler(Style.LIGHT, false, null, null);
+        Parent root = new Group();
+        styleHandler.styleRoot(root);
+        assertEquals(getJMetroStyleSheets(Style.LIGHT), root.getStylesheets());
+
+        styleHandler.reStyle(Style.DARK, false, List.of(root));
+        assertEquals(getJMetroStyleSheets(Style.DARK), root.getStylesheets());
+
+        styleHandler.reStyle(Style.LIGHT, false, List.of(root));
+        assertEquals(getJMetroStyleSheets(Style.LIGHT), root.getStylesheets());
+    }
+}